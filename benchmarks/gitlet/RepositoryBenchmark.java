@@ -0,0 +1,231 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static gitlet.HelperMethods.getBranchInHead;
+import static gitlet.HelperMethods.getCommit;
+import static gitlet.HelperMethods.getIdInBranch;
+
+/** JMH benchmarks of the repository commands, run in-process on a synthetic repository.
+ *  Each fork builds its own repository in a scratch directory, sized by the @Param fields of Repo,
+ *  and points user.dir at it before Repository is loaded, which is why the benchmarks need a fork.
+ *  Output of the commands is discarded.
+ *  Run java gitlet.RepositoryBenchmark [RESULTFILE] with jmh-core on the class path (the classes
+ *  compiled with jmh-generator-annprocess); the results are written as JSON to RESULTFILE,
+ *  jmh-result.json by default, so runs can be compared. org.openjdk.jmh.Main takes the usual
+ *  JMH options instead, e.g. -p commits=1000 -rf json.
+ *  @author Haichao
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RepositoryBenchmark {
+
+    /** a repository written by Generator: COMMITS commits over BRANCHES branches besides main,
+     *  each changing FILESPERCOMMIT files on average of 4 * FILESPERCOMMIT files of FILESIZE bytes,
+     *  merging another branch with probability MERGERATE. main is checked out. */
+    @State(Scope.Benchmark)
+    public static class Repo {
+
+        @Param({"10"})
+        public int filesPerCommit;
+
+        @Param({"100"})
+        public int commits;
+
+        @Param({"4"})
+        public int branches;
+
+        @Param({"1024"})
+        public int fileSize;
+
+        @Param({"0.05"})
+        public double mergeRate;
+
+        Path dir;
+
+        Random random;
+
+        PrintStream stdout;
+
+        /** head of main when the repository was built, and its parent. */
+        String head;
+
+        String parent;
+
+        @Setup(Level.Trial)
+        public void build() throws IOException {
+            dir = Files.createTempDirectory("gitlet-bench").toRealPath();
+            System.setProperty("user.dir", dir.toString());
+            if (!Repository.CWD.toPath().equals(dir)) {
+                throw new IllegalStateException("Repository was loaded before the benchmark set user.dir; "
+                        + "run the benchmarks with at least one fork.");
+            }
+            stdout = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            random = new Random(42);
+            Generator.generate(new Generator.Profile(commits, 4 * filesPerCommit, branches, filesPerCommit, 0,
+                    fileSize, 0, fileSize, mergeRate, true), 42);
+            // one more commit on b0, so merging it into main is never a no-op.
+            Repository.switchBranch(branchName(0));
+            edit(0);
+            Repository.add(fileName(0));
+            Repository.commit("branch commit");
+            Repository.switchBranch("main");
+            head = getIdInBranch("main");
+            parent = getCommit(head).getParent();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            System.setOut(stdout);
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+
+        /** give file I new random contents. */
+        void edit(int i) {
+            byte[] contents = new byte[fileSize];
+            random.nextBytes(contents);
+            Utils.writeContents(Utils.join(Repository.CWD, fileName(i)), (Object) contents);
+        }
+
+        static String fileName(int i) {
+            return Generator.path(i);
+        }
+
+        static String branchName(int b) {
+            return "b" + b;
+        }
+    }
+
+    /** a working file changed since it was last added. */
+    @State(Scope.Benchmark)
+    public static class EditedFile {
+        @Setup(Level.Invocation)
+        public void edit(Repo repo) {
+            repo.edit(0);
+        }
+    }
+
+    /** a staged change, ready to commit. */
+    @State(Scope.Benchmark)
+    public static class StagedFile {
+        @Setup(Level.Invocation)
+        public void stage(Repo repo) {
+            repo.edit(0);
+            Repository.add(Repo.fileName(0));
+        }
+    }
+
+    /** main moved back to where the repository was built, so b0 can be merged into it again. */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+        @Setup(Level.Invocation)
+        public void rewind(Repo repo) {
+            Repository.reset(repo.head);
+        }
+    }
+
+    /** alternates the target of switch and reset, so each invocation changes the working tree. */
+    @State(Scope.Benchmark)
+    public static class Toggle {
+        boolean flipped;
+    }
+
+    @Benchmark
+    public void add(Repo repo, EditedFile edited) {
+        Repository.add(Repo.fileName(0));
+    }
+
+    @Benchmark
+    public void commit(Repo repo, StagedFile staged) {
+        Repository.commit("benchmark commit");
+    }
+
+    @Benchmark
+    public void log(Repo repo) {
+        Repository.log(Repository.LogOptions.parse(new String[0]));
+    }
+
+    @Benchmark
+    public void globalLog(Repo repo) {
+        Repository.globalLog(false);
+    }
+
+    @Benchmark
+    public void find(Repo repo) {
+        Repository.find(null, "branch commit", false);
+    }
+
+    @Benchmark
+    public void status(Repo repo) {
+        Repository.status();
+    }
+
+    @Benchmark
+    public void switchBranch(Repo repo, Toggle toggle) {
+        toggle.flipped = !toggle.flipped;
+        Repository.switchBranch(toggle.flipped ? Repo.branchName(0) : "main");
+    }
+
+    @Benchmark
+    public void reset(Repo repo, Toggle toggle) {
+        toggle.flipped = !toggle.flipped;
+        Repository.reset(toggle.flipped ? repo.parent : repo.head);
+    }
+
+    @Benchmark
+    public void merge(Repo repo, Unmerged unmerged) {
+        Repository.merge(Repo.branchName(0));
+    }
+
+    @Benchmark
+    public Commit findSplitPoint(Repo repo) {
+        return MergeHelper.findSplitPoint(getCommit(getIdInBranch(getBranchInHead())),
+                getCommit(getIdInBranch(Repo.branchName(0))), new CommitCache());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String result = args.length > 0 ? args[0] : "jmh-result.json";
+        Options options = new OptionsBuilder()
+                .include(RepositoryBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(result).getAbsolutePath())
+                .build();
+        new Runner(options).run();
+    }
+}
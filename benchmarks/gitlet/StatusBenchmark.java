@@ -0,0 +1,140 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/** JMH benchmark of status latency against the size of the working tree, with the working file
+ *  metadata kept in the index either up to date (warm) or stale for every file (cold).
+ *  A cold status rehashes every tracked file; a warm one only compares metadata.
+ *  Like RepositoryBenchmark, each fork builds its repository in a scratch directory and points
+ *  user.dir at it before Repository is loaded. Run java gitlet.StatusBenchmark [RESULTFILE],
+ *  or org.openjdk.jmh.Main StatusBenchmark -p files=N -p cache=cold|warm for one point.
+ *  @author Haichao
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StatusBenchmark {
+
+    /** a repository whose one commit tracks FILES files of FILESIZE bytes, all checked out unchanged. */
+    @State(Scope.Benchmark)
+    public static class WorkingTree {
+
+        @Param({"1000", "10000", "100000"})
+        public int files;
+
+        @Param({"1024"})
+        public int fileSize;
+
+        /** "warm" keeps the metadata status recorded; "cold" changes every file's mtime before each status. */
+        @Param({"warm", "cold"})
+        public String cache;
+
+        Path dir;
+
+        PrintStream stdout;
+
+        /** the mtime all working files were last given. */
+        long mtime;
+
+        @Setup(Level.Trial)
+        public void build() throws IOException {
+            dir = Files.createTempDirectory("gitlet-bench").toRealPath();
+            System.setProperty("user.dir", dir.toString());
+            if (!Repository.CWD.toPath().equals(dir)) {
+                throw new IllegalStateException("Repository was loaded before the benchmark set user.dir; "
+                        + "run the benchmarks with at least one fork.");
+            }
+            stdout = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Repository.init();
+            Random random = new Random(42);
+            String[] names = new String[files];
+            byte[] contents = new byte[fileSize];
+            for (int i = 0; i < files; i++) {
+                names[i] = Generator.path(i);
+                Path file = dir.resolve(names[i]);
+                Files.createDirectories(file.getParent());
+                random.nextBytes(contents);
+                Files.write(file, contents);
+            }
+            Repository.add(names);
+            Repository.commit("files");
+            // metadata within a timestamp tick of now is never kept, so the files are dated an hour back.
+            mtime = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+            touch();
+            Repository.status();
+        }
+
+        /** make the metadata of every file stale for a cold status; it is recorded again as status rehashes. */
+        @Setup(Level.Invocation)
+        public void expire() throws IOException {
+            if (cache.equals("cold")) {
+                mtime -= 1000;
+                touch();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            System.setOut(stdout);
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+
+        /** set the mtime of every working file to MTIME. */
+        private void touch() throws IOException {
+            for (int i = 0; i < files; i++) {
+                Files.setLastModifiedTime(dir.resolve(Generator.path(i)), FileTime.fromMillis(mtime));
+            }
+        }
+    }
+
+    @Benchmark
+    public void status(WorkingTree tree) {
+        Repository.status();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String result = args.length > 0 ? args[0] : "jmh-result.json";
+        Options options = new OptionsBuilder()
+                .include(StatusBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(result).getAbsolutePath())
+                .build();
+        new Runner(options).run();
+    }
+}
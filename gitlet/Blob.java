@@ -1,8 +1,72 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import static gitlet.Repository.BLOBS_DIR;
+
+/** The content of a tracked file.
+ *  Blobs used to be stored as a serialized Blob object; those are still readable.
+ *  New blobs are stored as a 13 byte header (magic "glb", format version, encoding,
+ *  content length) followed by the content, either as is or zlib compressed,
+ *  or by a manifest of content-defined chunks which are blobs of their own.
+ *  Packs may also hold DELTA blobs: the raw id of a base blob, the length of the chain
+ *  below this blob, and a Delta that rebuilds the content from the base.
+ *  @author Haichao
+ */
 public class Blob implements Serializable {
+
+    /** pinned to the value of the original class so serialized blobs stay readable. */
+    private static final long serialVersionUID = 6569565599539798621L;
+
+    static final int HEADER_SIZE = 13;
+
+    /** longest delta chain, as the depth of a delta is stored in one unsigned byte. */
+    static final int MAX_DELTA_DEPTH = 255;
+
+    static final byte VERSION = 1;
+
+    static final byte STORED = 0;
+
+    static final byte DEFLATED = 1;
+
+    static final byte CHUNKED = 2;
+
+    static final byte DELTA = 3;
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** native memory of a zlib deflate stream at the default window and memory level:
+     *  (1 << (windowBits + 2)) + (1 << (memLevel + 9)) bytes. */
+    static final int DEFLATER_STATE = 256 * 1024;
+
     private byte[] contents;
 
     public Blob(byte[] contents) {
@@ -12,4 +76,461 @@ public class Blob implements Serializable {
     public byte[] getContents() {
         return contents;
     }
+
+    /** the repository settings that decide how new blobs are stored, read once per command. */
+    public record StoreOptions(int level, long chunkThreshold, String storeRaw) {
+
+        public static StoreOptions fromConfig() {
+            return new StoreOptions(Config.getInt(Config.COMPRESSION, Deflater.DEFAULT_COMPRESSION),
+                    Config.getLong(Config.CHUNK_THRESHOLD, 0), Config.get(Config.STORE_RAW, Config.DEFAULT_STORE_RAW));
+        }
+    }
+
+    public static String store(File source) {
+        return store(source, StoreOptions.fromConfig());
+    }
+
+    /** hash SOURCE and store it as a blob in a single streaming pass over the file,
+     *  compressed unless OPTIONS or the file type says otherwise.
+     *  files of at least core.chunkThreshold bytes are stored as a chunk manifest.
+     *  return the blob id, which is the same as sha1Helper(SOURCE). */
+    public static String store(File source, StoreOptions options) {
+        return store(BLOBS_DIR, source, options);
+    }
+
+    /** return how many bytes of buffers store(SOURCE, OPTIONS) holds at once: the read buffer and
+     *  the buffered output, and when compressing the deflater's buffer and native state. chunked files
+     *  also hold a chunk, its copy and its encoding, each up to Chunker.MAX_SIZE, and the manifest. */
+    public static int footprint(File source, StoreOptions options) {
+        boolean deflated = options.level() != 0 && !storedRaw(source.getName(), options.storeRaw());
+        long bytes = 2L * BUFFER_SIZE + (deflated ? BUFFER_SIZE + DEFLATER_STATE : 0);
+        long threshold = options.chunkThreshold();
+        if (threshold > 0 && source.length() >= threshold) {
+            long manifest = source.length() / Chunker.MIN_SIZE * (PackIndex.RAW_ID_LENGTH + Long.BYTES);
+            bytes += 3L * (Chunker.MAX_SIZE + HEADER_SIZE) + manifest;
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /** as store(SOURCE, OPTIONS), keeping the blob in BLOBSDIR. */
+    static String store(File blobsDir, File source, StoreOptions options) {
+        int level = options.level();
+        if (storedRaw(source.getName(), options.storeRaw())) {
+            level = 0;
+        }
+        long threshold = options.chunkThreshold();
+        if (threshold > 0 && source.length() >= threshold) {
+            return storeChunked(blobsDir, source, level);
+        }
+        long length = source.length();
+        MessageDigest md = HelperMethods.sha1Digest();
+        File tmp = ObjectStore.tempFile(blobsDir);
+        Deflater deflater = level != 0 ? new Deflater(level) : null;
+        try (InputStream in = Files.newInputStream(source.toPath());
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+            writeHeader(out, level != 0 ? DEFLATED : STORED, length);
+            OutputStream body = level != 0 ? new DeflaterOutputStream(out, deflater, BUFFER_SIZE) : out;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                body.write(buffer, 0, n);
+                total += n;
+            }
+            if (deflater != null) {
+                ((DeflaterOutputStream) body).finish();
+            }
+            checkLength(total, length);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp);
+        } catch (GitletException excp) {
+            tmp.delete();
+            throw excp;
+        } finally {
+            // frees the native zlib state even when the file could not be read or changed while it was.
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        md.update(source.getName().getBytes(StandardCharsets.UTF_8));
+        String id = PackIndex.toHex(md.digest());
+        ObjectStore.moveIn(blobsDir, id, tmp);
+        return id;
+    }
+
+    /** store SOURCE as content-defined chunks, each a blob keyed by chunkId of its bytes,
+     *  plus a manifest blob listing the chunks: chunk count, then each chunk's raw id and length.
+     *  chunks that are already stored, from an earlier version or another file, are not written again. */
+    private static String storeChunked(File blobsDir, File source, int level) {
+        long length = source.length();
+        MessageDigest md = HelperMethods.sha1Digest();
+        Chunker chunker = new Chunker();
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(Chunker.MAX_SIZE);
+        ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(manifest);
+        int count = 0;
+        long total = 0;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                total += n;
+                int start = 0;
+                for (int cut = chunker.next(buffer, 0, n); cut >= 0; cut = chunker.next(buffer, cut, n - cut)) {
+                    chunk.write(buffer, start, cut - start);
+                    storeChunk(blobsDir, chunk, entries, level);
+                    count += 1;
+                    start = cut;
+                }
+                chunk.write(buffer, start, n - start);
+            }
+            if (chunk.size() > 0) {
+                storeChunk(blobsDir, chunk, entries, level);
+                count += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        checkLength(total, length);
+        md.update(source.getName().getBytes(StandardCharsets.UTF_8));
+        String id = PackIndex.toHex(md.digest());
+        File tmp = ObjectStore.tempFile(blobsDir);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), BUFFER_SIZE))) {
+            writeHeader(out, CHUNKED, length);
+            out.writeInt(count);
+            manifest.writeTo(out);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp);
+        }
+        ObjectStore.moveIn(blobsDir, id, tmp);
+        return id;
+    }
+
+    /** store the bytes in CHUNK as a blob, record it in the manifest ENTRIES and empty CHUNK. */
+    private static void storeChunk(File blobsDir, ByteArrayOutputStream chunk, DataOutputStream entries, int level)
+            throws IOException {
+        byte[] bytes = chunk.toByteArray();
+        String chunkId = chunkId(bytes);
+        entries.write(PackIndex.toRaw(chunkId));
+        entries.writeLong(bytes.length);
+        chunk.reset();
+        if (ObjectStore.contains(blobsDir, chunkId)) {
+            return;
+        }
+        ObjectStore.write(blobsDir, chunkId, encode(bytes, level));
+    }
+
+    /** return the id of a chunk holding BYTES. whole blobs hash their contents followed by a file name,
+     *  which never ends in '/', so a chunk hashes "chunk", its bytes and a '/', and can never have the
+     *  id of a whole blob whatever the file holds. */
+    static String chunkId(byte[] bytes) {
+        return Utils.sha1("chunk", bytes, "/");
+    }
+
+    /** store CONTENTS, the bytes of a file named FILENAME, as a blob as set by OPTIONS but never chunked,
+     *  and return the blob id, the same as that of the file. used to write history without a working tree. */
+    public static String store(String fileName, byte[] contents, StoreOptions options) {
+        MessageDigest md = HelperMethods.sha1Digest();
+        md.update(contents);
+        md.update(fileName.getBytes(StandardCharsets.UTF_8));
+        String id = PackIndex.toHex(md.digest());
+        if (!ObjectStore.contains(BLOBS_DIR, id)) {
+            int level = storedRaw(fileName, options.storeRaw()) ? 0 : options.level();
+            ObjectStore.write(BLOBS_DIR, id, encode(contents, level));
+        }
+        return id;
+    }
+
+    /** return the header and the body of a whole blob holding BYTES, deflated at LEVEL unless it is 0. */
+    private static byte[] encode(byte[] bytes, int level) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(record);
+        try {
+            writeHeader(out, level != 0 ? DEFLATED : STORED, bytes.length);
+            if (level != 0) {
+                Deflater deflater = new Deflater(level);
+                try {
+                    DeflaterOutputStream zip = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                    zip.write(bytes);
+                    zip.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                out.write(bytes);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return record.toByteArray();
+    }
+
+    private static void checkLength(long total, long length) {
+        if (total != length) {
+            throw new GitletException("File changed while it was being added.");
+        }
+    }
+
+    /** return the content of blob ID as a stream, or null if there is no such blob.
+     *  chunked blobs are read one chunk at a time. */
+    public static InputStream open(String id) {
+        return open(id, new DeltaCache());
+    }
+
+    /** as open(ID), rebuilding delta blobs from the versions kept in CACHE where possible. */
+    public static InputStream open(String id, DeltaCache cache) {
+        InputStream raw = ObjectStore.open(BLOBS_DIR, id);
+        if (raw == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, BUFFER_SIZE));
+            in.mark(HEADER_SIZE);
+            if (in.read() != 'g' || in.read() != 'l' || in.read() != 'b') {
+                in.reset();
+                return legacy(in);
+            }
+            in.readByte();
+            byte encoding = in.readByte();
+            in.readLong();
+            if (encoding == DEFLATED) {
+                Inflater inflater = new Inflater();
+                return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+            if (encoding == CHUNKED) {
+                List<String> chunkIds = readManifest(in);
+                in.close();
+                Iterator<String> chunks = chunkIds.iterator();
+                return new SequenceInputStream(new Enumeration<InputStream>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return chunks.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        return openExisting(chunks.next(), cache);
+                    }
+                });
+            }
+            if (encoding == DELTA) {
+                in.close();
+                return new ByteArrayInputStream(rebuild(id, cache));
+            }
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** write the content of blob ID to DEST, replacing it. Blobs stored uncompressed are
+     *  copied straight from the object file or pack with FileChannel.transferTo, so their
+     *  content never passes through the Java heap; chunked blobs are copied chunk by chunk.
+     *  return false if there is no such blob. */
+    public static boolean writeTo(String id, File dest, DeltaCache cache) {
+        long start = Trace.start();
+        if (!ObjectStore.contains(BLOBS_DIR, id)) {
+            return false;
+        }
+        try (FileChannel out = FileChannel.open(dest.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            copyTo(id, out, cache);
+            // counted as findBlob, which restore, switch and reset read their blobs through.
+            Trace.end(Trace.FIND_BLOB, start, out.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return true;
+    }
+
+    /** append the content of blob ID to OUT. */
+    private static void copyTo(String id, FileChannel out, DeltaCache cache) throws IOException {
+        ObjectStore.Location location = ObjectStore.locate(BLOBS_DIR, id);
+        if (location == null) {
+            throw new GitletException("No blob with the ID found.");
+        }
+        try (FileChannel in = FileChannel.open(location.file().toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            in.read(header, location.offset());
+            header.flip();
+            if (header.remaining() == HEADER_SIZE && header.get(0) == 'g' && header.get(1) == 'l'
+                    && header.get(2) == 'b') {
+                long start = location.offset() + HEADER_SIZE;
+                if (header.get(4) == STORED) {
+                    long count = header.getLong(5);
+                    long copied = 0;
+                    while (copied < count) {
+                        copied += in.transferTo(start + copied, count - copied, out);
+                    }
+                    return;
+                }
+                if (header.get(4) == CHUNKED) {
+                    InputStream manifest = Channels.newInputStream(in.position(start));
+                    for (String chunkId : readManifest(new DataInputStream(new BufferedInputStream(manifest)))) {
+                        copyTo(chunkId, out, cache);
+                    }
+                    return;
+                }
+            }
+        }
+        try (InputStream in = openExisting(id, cache)) {
+            in.transferTo(Channels.newOutputStream(out));
+        }
+    }
+
+    /** rebuild delta blob ID: follow the bases down to a full blob or a cached version,
+     *  then apply the deltas back up, caching every version rebuilt on the way. */
+    private static byte[] rebuild(String id, DeltaCache cache) {
+        List<String> chain = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>();
+        String current = id;
+        byte[] content = cache.get(current);
+        while (content == null) {
+            if (encoding(current) != DELTA) {
+                try (InputStream in = openExisting(current, cache)) {
+                    content = in.readAllBytes();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+                cache.put(current, content);
+                break;
+            }
+            byte[] record = ObjectStore.read(BLOBS_DIR, current);
+            chain.add(current);
+            records.add(record);
+            current = PackIndex.toHex(Arrays.copyOfRange(record, HEADER_SIZE, HEADER_SIZE + PackIndex.RAW_ID_LENGTH));
+            content = cache.get(current);
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            byte[] record = records.get(i);
+            byte[] delta = Arrays.copyOfRange(record, HEADER_SIZE + PackIndex.RAW_ID_LENGTH + 1, record.length);
+            content = Delta.apply(content, delta, ByteBuffer.wrap(record).getLong(5));
+            cache.put(chain.get(i), content);
+        }
+        return content;
+    }
+
+    /** return the stored record of a blob that rebuilds TARGET from base blob BASEID,
+     *  DEPTH being the length of the delta chain ending at this blob. */
+    static byte[] deltaRecord(String baseId, int depth, byte[] base, byte[] target) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            writeHeader(out, DELTA, target.length);
+            out.write(PackIndex.toRaw(baseId));
+            out.writeByte(depth);
+            out.write(Delta.create(base, target));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return record.toByteArray();
+    }
+
+    /** return the encoding of blob ID, or -1 for a serialized Blob or a missing blob. */
+    static byte encoding(String id) {
+        byte[] header = readHeader(id, HEADER_SIZE + PackIndex.RAW_ID_LENGTH + 1);
+        return header == null ? -1 : header[4];
+    }
+
+    /** return how many deltas must be applied to rebuild blob ID, 0 if it is stored in full. */
+    static int deltaDepth(String id) {
+        byte[] header = readHeader(id, HEADER_SIZE + PackIndex.RAW_ID_LENGTH + 1);
+        if (header == null || header[4] != DELTA) {
+            return 0;
+        }
+        return header[HEADER_SIZE + PackIndex.RAW_ID_LENGTH] & 0xff;
+    }
+
+    /** return the first (up to) SIZE bytes of the record of blob ID if it has a blob header, else null. */
+    private static byte[] readHeader(String id, int size) {
+        ObjectStore.Location location = ObjectStore.locate(BLOBS_DIR, id);
+        if (location == null) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(location.file().toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(size, location.length()));
+            in.read(header, location.offset());
+            byte[] bytes = header.array();
+            if (bytes.length < HEADER_SIZE || bytes[0] != 'g' || bytes[1] != 'l' || bytes[2] != 'b') {
+                return null;
+            }
+            return bytes;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** read the chunk ids of a chunked blob, IN being positioned just after the header. */
+    private static List<String> readManifest(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> chunkIds = new ArrayList<>(count);
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            in.readFully(raw);
+            in.readLong();
+            chunkIds.add(PackIndex.toHex(raw));
+        }
+        return chunkIds;
+    }
+
+    private static InputStream openExisting(String id, DeltaCache cache) {
+        InputStream in = open(id, cache);
+        if (in == null) {
+            throw new GitletException("No blob with the ID found.");
+        }
+        return in;
+    }
+
+    /** return the whole content of blob ID, or null if there is no such blob. */
+    public static byte[] read(String id) {
+        return read(id, new DeltaCache());
+    }
+
+    public static byte[] read(String id, DeltaCache cache) {
+        try (InputStream in = open(id, cache)) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    static void writeHeader(DataOutputStream out, byte encoding, long length) throws IOException {
+        out.write(new byte[]{'g', 'l', 'b', VERSION, encoding});
+        out.writeLong(length);
+    }
+
+    private static InputStream legacy(InputStream in) throws IOException {
+        try (ObjectInputStream objects = new ObjectInputStream(in)) {
+            Blob b = (Blob) objects.readObject();
+            return new ByteArrayInputStream(b.getContents());
+        } catch (ClassNotFoundException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    private static boolean storedRaw(String fileName, String storeRaw) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return false;
+        }
+        String extension = fileName.substring(dot + 1).toLowerCase();
+        for (String raw : storeRaw.split(",")) {
+            if (raw.trim().equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static gitlet.Repository.*;
+
+/** An append-only list of every commit, so global-log reads two files instead of the object store.
+ *  .gitlet/catalog (big-endian): magic "GLCA", version, stamp (long), then one fixed size entry per
+ *  commit in the order they were saved:
+ *      raw id, time (ms), raw first parent id, raw second parent id (zeros if none),
+ *      offset of the message in the message file (long), message length (int).
+ *  .gitlet/catalog-messages: magic "GLCM", the same stamp, then the UTF-8 messages back to back.
+ *  The stamp pairs the two files, so a catalog is never read against the messages of another one.
+ *  A commit saved twice may be listed twice; readers keep the first entry.
+ *  @author Haichao
+ */
+public class Catalog {
+
+    public static final File CATALOG_FILE = Utils.join(GITLET_DIR, "catalog");
+
+    public static final File MESSAGES_FILE = Utils.join(GITLET_DIR, "catalog-messages");
+
+    static final int MAGIC = 0x474c4341;
+
+    static final int MESSAGES_MAGIC = 0x474c434d;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int MESSAGES_HEADER_SIZE = 12;
+
+    static final int ENTRY_SIZE = 3 * PackIndex.RAW_ID_LENGTH + 8 + 8 + 4;
+
+    private final ByteBuffer entries;
+
+    private final ByteBuffer messages;
+
+    private final int count;
+
+    /** one commit as listed in the catalog. */
+    public record Entry(String id, long time, String parent, String secondParent, String message) { }
+
+    /** the catalog held in ENTRIES and MESSAGES, laid out as in its two files. */
+    Catalog(ByteBuffer entries, ByteBuffer messages) {
+        this.entries = entries;
+        this.messages = messages;
+        // an entry cut short by an interrupted append is ignored.
+        this.count = (entries.capacity() - HEADER_SIZE) / ENTRY_SIZE;
+    }
+
+    /** return the catalog of this repository, or null if it has none or its two files do not belong together. */
+    public static Catalog read() {
+        if (!CATALOG_FILE.isFile() || !MESSAGES_FILE.isFile()) {
+            return null;
+        }
+        ByteBuffer entries = map(CATALOG_FILE);
+        ByteBuffer messages = map(MESSAGES_FILE);
+        if (entries.capacity() < HEADER_SIZE || entries.getInt(0) != MAGIC || entries.getInt(4) != VERSION
+                || messages.capacity() < MESSAGES_HEADER_SIZE || messages.getInt(0) != MESSAGES_MAGIC
+                || messages.getLong(4) != entries.getLong(8)) {
+            return null;
+        }
+        return new Catalog(entries, messages);
+    }
+
+    /** return the catalog, rebuilding it from the object store first if it is missing or broken. */
+    public static Catalog readOrWrite() {
+        Catalog catalog = read();
+        if (catalog == null) {
+            write();
+            catalog = read();
+        }
+        return catalog;
+    }
+
+    private static ByteBuffer map(File f) {
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Entry entryAt(int i) {
+        int start = HEADER_SIZE + i * ENTRY_SIZE;
+        String id = idAt(start);
+        long time = entries.getLong(start + PackIndex.RAW_ID_LENGTH);
+        String parent = idAt(start + PackIndex.RAW_ID_LENGTH + 8);
+        String secondParent = idAt(start + 2 * PackIndex.RAW_ID_LENGTH + 8);
+        long offset = entries.getLong(start + 3 * PackIndex.RAW_ID_LENGTH + 8);
+        byte[] message = new byte[entries.getInt(start + 3 * PackIndex.RAW_ID_LENGTH + 16)];
+        messages.get((int) offset, message);
+        return new Entry(id, time, parent, secondParent, new String(message, StandardCharsets.UTF_8));
+    }
+
+    /** return the hex id at START, or null if it is all zeros. */
+    private String idAt(int start) {
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        entries.get(start, raw);
+        return Arrays.equals(raw, new byte[raw.length]) ? null : PackIndex.toHex(raw);
+    }
+
+    /** call ACTION with each commit in the catalog once, in id order, or newest first if BYDATE.
+     *  the ids and times are read in one pass to sort the entries, which are then read in that order. */
+    public void forEach(boolean byDate, Consumer<Entry> action) {
+        Integer[] order = new Integer[count];
+        String[] ids = new String[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            int start = HEADER_SIZE + i * ENTRY_SIZE;
+            ids[i] = idAt(start);
+            times[i] = entries.getLong(start + PackIndex.RAW_ID_LENGTH);
+        }
+        Comparator<Integer> byId = Comparator.comparing(i -> ids[i]);
+        // the sort is stable, so the first entry of a commit listed twice comes first.
+        Arrays.sort(order, byDate ? Comparator.comparingLong((Integer i) -> times[i]).reversed().thenComparing(byId)
+                : byId);
+        String last = null;
+        for (Integer i : order) {
+            if (!ids[i].equals(last)) {
+                action.accept(entryAt(i));
+            }
+            last = ids[i];
+        }
+    }
+
+    /** return a line for each difference between the catalog and the commits in the object store,
+     *  which are all read to compare them; none if the two agree. */
+    public List<String> verify() {
+        Map<String, Entry> listed = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Entry entry = entryAt(i);
+            listed.putIfAbsent(entry.id(), entry);
+        }
+        List<String> problems = new ArrayList<>();
+        try (CommitScan scan = CommitScan.fromConfig()) {
+            scan.forEach(scan.ids(false), c -> {
+                Entry entry = listed.remove(c.getId());
+                if (entry == null) {
+                    problems.add("missing " + c.getId());
+                } else if (!entry.equals(entryOf(c))) {
+                    problems.add("differs " + c.getId());
+                }
+            });
+        }
+        for (String id : listed.keySet()) {
+            problems.add("unknown " + id);
+        }
+        problems.sort(null);
+        return problems;
+    }
+
+    private static Entry entryOf(Commit c) {
+        return new Entry(c.getId(), c.getTimeStamp().getTime(), c.getParent(), c.getSecondParent(), c.getMessage());
+    }
+
+    /** add the saved commit C, appending its message and then its entry.
+     *  nothing is added if the repository has no catalog; global-log builds it when it is needed. */
+    public static void append(Commit c) {
+        Catalog catalog = read();
+        if (catalog == null) {
+            return;
+        }
+        byte[] message = c.getMessage().getBytes(StandardCharsets.UTF_8);
+        try (FileChannel messagesOut = FileChannel.open(MESSAGES_FILE.toPath(), StandardOpenOption.WRITE);
+             FileChannel entriesOut = FileChannel.open(CATALOG_FILE.toPath(), StandardOpenOption.WRITE)) {
+            long offset = messagesOut.size();
+            messagesOut.write(ByteBuffer.wrap(message), offset);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            putEntry(entry, entryOf(c), offset, message.length);
+            entry.flip();
+            long end = HEADER_SIZE + (long) catalog.count * ENTRY_SIZE;
+            entriesOut.truncate(end);
+            entriesOut.write(entry, end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** rebuild the catalog from every commit in the object store, in id order. */
+    public static void write() {
+        long stamp = System.nanoTime() ^ System.currentTimeMillis();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(stamp);
+        ByteBuffer messagesHeader = ByteBuffer.allocate(MESSAGES_HEADER_SIZE).putInt(MESSAGES_MAGIC).putLong(stamp);
+        File entriesTmp = Utils.join(GITLET_DIR, "catalog.tmp");
+        File messagesTmp = Utils.join(GITLET_DIR, "catalog-messages.tmp");
+        try (FileChannel entriesOut = FileChannel.open(entriesTmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel messagesOut = FileChannel.open(messagesTmp.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             CommitScan scan = CommitScan.fromConfig()) {
+            entriesOut.write(header.flip());
+            messagesOut.write(messagesHeader.flip());
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            scan.forEach(scan.ids(false), c -> {
+                byte[] message = c.getMessage().getBytes(StandardCharsets.UTF_8);
+                try {
+                    long offset = messagesOut.position();
+                    messagesOut.write(ByteBuffer.wrap(message));
+                    entry.clear();
+                    putEntry(entry, entryOf(c), offset, message.length);
+                    entriesOut.write(entry.flip());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        try {
+            // the stamp keeps the new messages from being read with the old catalog in between.
+            Files.move(messagesTmp.toPath(), MESSAGES_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(entriesTmp.toPath(), CATALOG_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** put ENTRY into OUT, its message being the LENGTH bytes at OFFSET in the message file. */
+    static void putEntry(ByteBuffer out, Entry entry, long offset, int length) {
+        out.put(PackIndex.toRaw(entry.id())).putLong(entry.time()).put(rawOrZeros(entry.parent()))
+                .put(rawOrZeros(entry.secondParent())).putLong(offset).putInt(length);
+    }
+
+    private static byte[] rawOrZeros(String id) {
+        return id == null ? new byte[PackIndex.RAW_ID_LENGTH] : PackIndex.toRaw(id);
+    }
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+/** Finds content-defined chunk boundaries with a gear rolling hash.
+ *  The hash only depends on the last 64 bytes seen, so inserting or appending bytes
+ *  moves the boundaries around the edit but leaves the other chunks, and their ids, unchanged.
+ *  A chunk ends where the top bits of the hash are all zero, giving an average size of
+ *  about AVERAGE_SIZE, clamped between MIN_SIZE and MAX_SIZE.
+ *  @author Haichao
+ */
+public class Chunker {
+
+    static final int MIN_SIZE = 16 * 1024;
+
+    static final int AVERAGE_SIZE = 64 * 1024;
+
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** log2 of AVERAGE_SIZE; a boundary needs this many top bits of the hash to be zero. */
+    private static final int BOUNDARY_BITS = 16;
+
+    /** a pseudo random value per byte value, fixed so that boundaries are stable across runs. */
+    private final long[] gear = new long[256];
+
+    private long hash;
+
+    private int size;
+
+    public Chunker() {
+        long seed = 0x676c62L;
+        for (int i = 0; i < gear.length; i++) {
+            // splitmix64
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            gear[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** scan LEN bytes of BUFFER from OFF and return the index just past the next chunk boundary,
+     *  or -1 if the current chunk continues past the scanned bytes. */
+    public int next(byte[] buffer, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            hash = (hash << 1) + gear[buffer[i] & 0xff];
+            size += 1;
+            if ((size >= MIN_SIZE && (hash >>> (64 - BOUNDARY_BITS)) == 0) || size >= MAX_SIZE) {
+                hash = 0;
+                size = 0;
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/** The thin client of a Daemon: java gitlet.Client ARGS sends ARGS to the daemon of the repository
+ *  in the working directory and replays its output and exit status, or runs the command itself
+ *  through Main if no daemon is listening. It uses nothing but the JDK until it falls back,
+ *  so the commands it forwards load none of gitlet.
+ *  @author Haichao
+ */
+public class Client {
+
+    /** Daemon.SOCKET_FILE, named here so that forwarding a command does not load Repository. */
+    private static final Path SOCKET_PATH = Path.of(System.getProperty("user.dir"), ".gitlet", "daemon.sock");
+
+    public static void main(String[] args) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_PATH));
+        } catch (IOException | UnsupportedOperationException excp) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (channel) {
+            status = forward(channel, args);
+        } catch (IOException excp) {
+            System.err.println("Lost the connection to the gitlet daemon: " + excp.getMessage());
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /** send ARGS over CHANNEL, copy the output of the command to System.out and System.err
+     *  as it arrives, and return its exit status. */
+    static int forward(SocketChannel channel, String[] args) throws IOException {
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        request.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            request.writeInt(bytes.length);
+            request.write(bytes);
+        }
+        request.flush();
+        DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        byte[] buffer = new byte[8192];
+        while (true) {
+            byte type = response.readByte();
+            int length = response.readInt();
+            if (type == Daemon.EXIT) {
+                return response.readInt();
+            }
+            OutputStream out = type == Daemon.ERR ? System.err : System.out;
+            while (length > 0) {
+                int n = response.read(buffer, 0, Math.min(length, buffer.length));
+                if (n < 0) {
+                    throw new IOException("the daemon closed the connection");
+                }
+                out.write(buffer, 0, n);
+                length -= n;
+            }
+            out.flush();
+        }
+    }
+}
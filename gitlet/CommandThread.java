@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The thread a traced command runs on outside a Daemon, holding what is kept for the length of the command:
+ *  its Trace, its CommitCache, and the packs it mapped, so the pack indexes are listed and mapped once
+ *  per command instead of once per object, as in the Daemon the trace is compared with. Code finds them with
+ *  `Thread.currentThread() instanceof`, as it does the Daemon, which holds the same for its commands.
+ *  @author Haichao
+ */
+public class CommandThread extends Thread implements Trace.Holder, ObjectStore.Holder {
+
+    private final Runnable command;
+
+    private final Map<File, ObjectStore.Reader> readers = new HashMap<>();
+
+    private Trace trace;
+
+    /** made on first use, so commands without commits do not read the config for it. */
+    private CommitCache commits;
+
+    private Throwable failure;
+
+    private CommandThread(Runnable command) {
+        super("gitlet-command");
+        this.command = command;
+    }
+
+    /** run COMMAND on a new CommandThread and wait for it to finish, throwing what it threw. */
+    public static void execute(Runnable command) {
+        CommandThread thread = new CommandThread(command);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.failure instanceof RuntimeException excp) {
+            throw excp;
+        } else if (thread.failure instanceof Error error) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            command.run();
+        } catch (RuntimeException | Error excp) {
+            failure = excp;
+        }
+    }
+
+    @Override
+    public Trace trace() {
+        return trace;
+    }
+
+    /** count the operations of the command against TRACE, or nothing if it is null. */
+    void trace(Trace trace) {
+        this.trace = trace;
+    }
+
+    /** return the commit cache of the command. */
+    public CommitCache commits() {
+        if (commits == null) {
+            commits = CommitCache.fromConfig();
+        }
+        return commits;
+    }
+
+    /** return the commit cache of the command, or null if it used none. */
+    CommitCache usedCommits() {
+        return commits;
+    }
+
+    @Override
+    public ObjectStore.Reader reader(File kindDir) {
+        return readers.computeIfAbsent(kindDir, ObjectStore.Reader::new);
+    }
+
+    @Override
+    public void forgetPacks() {
+        readers.clear();
+    }
+}
@@ -1,7 +1,8 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Map;
 import java.util.TreeMap;
@@ -11,12 +12,16 @@ import static gitlet.HelperMethods.*;
 /** Represents a gitlet commit object.
  *  each instance has reference to parent and child commit id name,
  *  Commit 0's parent is set to null.
- *  and it contains a tree map of the file names and ids being tracked.
+ *  and it references the root Tree of the files being tracked; commits written before trees
+ *  existed hold a map of the file names and ids instead.
  *  each instance is serialized in commit file with id as file name.
  *  @author Haichao
  */
 public class Commit implements Serializable {
 
+    /** pinned to the value of the original class so serialized commits stay readable. */
+    private static final long serialVersionUID = -2939786835897359451L;
+
     /**
      * The message of this Commit.
      */
@@ -33,9 +38,19 @@ public class Commit implements Serializable {
     private String parentId;
 
     /**
-     * a map of all tracked files, with id : name
+     * a map of all tracked files, with name : id, only set in commits written before trees existed.
      */
-    private Map<String, String> trackedFiles = new TreeMap<>();
+    private Map<String, String> trackedFiles;
+
+    /**
+     * the id of the root tree of the tracked files.
+     */
+    private String treeId;
+
+    /**
+     * the tracked files, name : id, once loaded from the tree or changed in memory.
+     */
+    private transient Map<String, String> files;
 
     /**
      * the unique id of the commit
@@ -49,6 +64,7 @@ public class Commit implements Serializable {
         message = msg;
         id = Utils.sha1((Object) Utils.serialize(this));
         parentId = null;
+        files = new TreeMap<>();
     }
 
     public Commit(String msg, String parentId) {
@@ -57,8 +73,7 @@ public class Commit implements Serializable {
         id = Utils.sha1((Object) Utils.serialize(this));
         this.parentId = parentId;
         // get parent commit object and inherit tracked files from parent.
-        Commit parentCommit = getCommit(parentId);
-        this.trackedFiles = parentCommit.getTrackedFiles();
+        inherit(getCommit(parentId, CommitCache.forCommand()));
     }
 
     // merge commit
@@ -68,25 +83,137 @@ public class Commit implements Serializable {
         this.secondParentId = secondParentId;
         message = msg;
         id = Utils.sha1((Object) Utils.serialize(this));
-        Commit parentCommit = getCommit(parentId);
-        this.trackedFiles = parentCommit.getTrackedFiles();
+        inherit(getCommit(parentId, CommitCache.forCommand()));
+    }
+
+    /** a commit made at TIME on PARENT, merging SECONDPARENT unless it is null, which starts from
+     *  the files of PARENT. it reads no other commit, so whole histories can be built in memory. */
+    public Commit(Date time, String msg, Commit parent, Commit secondParent) {
+        timeStamp = time;
+        parentId = parent.getId();
+        secondParentId = secondParent == null ? null : secondParent.getId();
+        message = msg;
+        id = Utils.sha1((Object) Utils.serialize(this));
+        inherit(parent);
+    }
+
+    /** start from the tree of PARENT, or from a copy of its files if it has no tree. */
+    private void inherit(Commit parent) {
+        if (parent.treeId != null) {
+            treeId = parent.treeId;
+        } else {
+            files = new TreeMap<>(parent.getTrackedFiles());
+        }
     }
 
     public String getId() {
         return id;
     }
 
+    /** return the tracked files, name : id. changes to the map are saved with the commit. */
     public Map<String, String> getTrackedFiles() {
-        return trackedFiles;
+        if (files == null) {
+            if (treeId != null) {
+                files = Tree.files(treeId);
+            } else {
+                files = trackedFiles == null ? new TreeMap<>() : new TreeMap<>(trackedFiles);
+            }
+        }
+        return files;
+    }
+
+    /** load all tracked files at once, so getFileId answers from memory instead of walking the trees per file. */
+    public void loadFiles() {
+        getTrackedFiles();
+    }
+
+    /** return the id of tracked file FILENAME, or null if it is not tracked,
+     *  without loading the other tracked files. */
+    public String getFileId(String fileName) {
+        if (files == null && treeId != null) {
+            return Tree.lookup(treeId, fileName);
+        }
+        return getTrackedFiles().get(fileName);
     }
 
     public void track(String fileName, String fileId) {
-        trackedFiles.put(fileName, fileId);
+        getTrackedFiles().put(fileName, fileId);
+    }
+
+    /** apply CHANGES, name : new id or null to stop tracking the file.
+     *  if the tracked files were not loaded, only the trees on the changed paths are rewritten. */
+    public void updateFiles(Map<String, String> changes) {
+        if (files != null) {
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    files.remove(change.getKey());
+                } else {
+                    files.put(change.getKey(), change.getValue());
+                }
+            }
+        } else {
+            treeId = Tree.update(treeId, changes);
+        }
+    }
+
+    /** store the tracked files as trees if they were loaded, and so may have changed, before saving. */
+    public void writeTree() {
+        if (files != null) {
+            treeId = Tree.writeFiles(files);
+            trackedFiles = null;
+        }
+    }
+
+    /** one plus the number of tracked files held in memory, used to size CommitCache. */
+    public long weight() {
+        if (files != null) {
+            return 1 + files.size();
+        }
+        return 1 + (trackedFiles == null ? 0 : trackedFiles.size());
+    }
+
+    public String getTreeId() {
+        return treeId;
+    }
+
+    /** return the files that differ from this saved commit in saved commit OTHER,
+     *  name : id in OTHER, or null if OTHER lacks it. */
+    public Map<String, String> changesTo(Commit other) {
+        if (treeId != null && other.treeId != null) {
+            return Tree.diff(treeId, other.treeId);
+        }
+        Map<String, String> result = new TreeMap<>();
+        Map<String, String> mine = getTrackedFiles();
+        Map<String, String> theirs = other.getTrackedFiles();
+        for (Map.Entry<String, String> file : theirs.entrySet()) {
+            if (!file.getValue().equals(mine.get(file.getKey()))) {
+                result.put(file.getKey(), file.getValue());
+            }
+        }
+        for (String fileName : mine.keySet()) {
+            if (!theirs.containsKey(fileName)) {
+                result.put(fileName, null);
+            }
+        }
+        return result;
+    }
+
+    /** return a formatter for commit dates in the local time zone. it is immutable, so one can be
+     *  reused for a whole history, or shared between threads. */
+    public static DateTimeFormatter dateFormatter() {
+        return DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z").withZone(ZoneId.systemDefault());
     }
 
     public String getDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        return sdf.format(timeStamp);
+        return getDate(dateFormatter());
+    }
+
+    public String getDate(DateTimeFormatter formatter) {
+        return formatter.format(timeStamp.toInstant());
+    }
+
+    public Date getTimeStamp() {
+        return timeStamp;
     }
 
     public String getMessage() {
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Commits already read during one command, so walks and repeated lookups of the same commit
+ *  deserialize it only once. Each commit weighs one plus the tracked files it holds in memory,
+ *  which is what dominates its size; least recently used commits are evicted once the total
+ *  weight exceeds the budget. A commit whose files are loaded after it was cached is weighed
+ *  again the next time it is found.
+ *  @author Haichao
+ */
+public class CommitCache {
+
+    public static final long DEFAULT_BUDGET = 1_000_000;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long budget;
+
+    private long weight;
+
+    private long hits;
+
+    private long misses;
+
+    private static class Entry {
+
+        private final Commit commit;
+
+        private long weight;
+
+        Entry(Commit commit) {
+            this.commit = commit;
+            this.weight = commit.weight();
+        }
+    }
+
+    public CommitCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public CommitCache(long budget) {
+        this.budget = budget;
+    }
+
+    /** a cache with the budget in the repository config. */
+    public static CommitCache fromConfig() {
+        return new CommitCache(Config.getLong(Config.COMMIT_CACHE, DEFAULT_BUDGET));
+    }
+
+    /** the cache for a command: that of the running Daemon, which outlives the command, or that of
+     *  the CommandThread running it, or else a new one. a command takes it once and reads every
+     *  commit through it, so a commit read twice in one command is deserialized once. */
+    public static CommitCache forCommand() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Daemon daemon) {
+            return daemon.commits();
+        }
+        return thread instanceof CommandThread command ? command.commits() : fromConfig();
+    }
+
+    /** return commit ID if it is cached, or null, counting a hit or a miss. */
+    public Commit get(String id) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        long now = entry.commit.weight();
+        if (now != entry.weight) {
+            weight += now - entry.weight;
+            entry.weight = now;
+            evict();
+        }
+        return entry.commit;
+    }
+
+    public void put(Commit c) {
+        Entry entry = new Entry(c);
+        if (entry.weight > budget) {
+            return;
+        }
+        Entry old = entries.put(c.getId(), entry);
+        weight += entry.weight - (old == null ? 0 : old.weight);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > budget && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /** the total weight of the cached commits. */
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "commit cache: " + hits + " hits, " + misses + " misses, " + entries.size() + " commits, weight "
+                + weight + " of " + budget;
+    }
+}
@@ -0,0 +1,24 @@
+package gitlet;
+
+/** A commit history addressed by position, as walked by MergeHelper.
+ *  CommitGraph is the one stored in a repository.
+ *  @author Haichao
+ */
+public interface CommitDag {
+
+    int NONE = -1;
+
+    /** the number of commits, whose positions are 0 to size() - 1. */
+    int size();
+
+    /** the position of the first parent of the commit at POS, or NONE. */
+    int parentAt(int pos);
+
+    /** the position of the second parent of the commit at POS, or NONE. */
+    int secondParentAt(int pos);
+
+    /** one more than the largest generation of the parents of the commit at POS, 1 for a root. */
+    int generationAt(int pos);
+
+    long timeAt(int pos);
+}
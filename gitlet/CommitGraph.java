@@ -0,0 +1,325 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+
+/** The parents, time, root tree and generation number of every commit in one memory mapped file,
+ *  so that history walks do not have to deserialize commits.
+ *  Layout (big-endian): magic "GLCG", version, base count, unused, a 256 entry fanout table over the
+ *  base, then fixed size records. The first base count records are sorted by id and found by binary
+ *  search; records appended by commit and merge follow in the tail, in the order they were made.
+ *  A record is: raw id (20 bytes), first and second parent position (NONE if absent), time (ms),
+ *  raw root tree id (zeros for commits written before trees existed), generation.
+ *  The generation of a commit is one more than the largest generation of its parents, and 1 for the
+ *  initial commit, so a commit never has a smaller generation than any of its descendants.
+ *  @author Haichao
+ */
+public class CommitGraph implements CommitDag {
+
+    public static final File GRAPH_FILE = Utils.join(GITLET_DIR, "commit-graph");
+
+    static final int MAGIC = 0x474c4347;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int FANOUT_SIZE = 256 * 4;
+
+    private static final int RECORD_SIZE = 60;
+
+    /** the tail is merged into the sorted base once it holds this many records. */
+    private static final int TAIL_LIMIT = 1024;
+
+    private final ByteBuffer buffer;
+
+    private final int baseCount;
+
+    private final int count;
+
+    /** id : position of the records in the tail. */
+    private final Map<String, Integer> tail = new HashMap<>();
+
+    /** one commit, with its parents by id, as collected before writing the graph. */
+    record Node(String id, String parent, String secondParent, long time, String tree) { }
+
+    /** the graph held in BUFFER, laid out as in the graph file. */
+    CommitGraph(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + FANOUT_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new GitletException("Corrupt commit-graph file.");
+        }
+        this.baseCount = buffer.getInt(8);
+        // a record cut short by an interrupted append is ignored.
+        this.count = (buffer.capacity() - HEADER_SIZE - FANOUT_SIZE) / RECORD_SIZE;
+        for (int pos = baseCount; pos < count; pos++) {
+            tail.put(idAt(pos), pos);
+        }
+    }
+
+    /** return the commit-graph of this repository, or null if it has none. */
+    public static CommitGraph read() {
+        if (!GRAPH_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(), StandardOpenOption.READ)) {
+            return new CommitGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /** return the position of commit ID, or NONE if it is not in the graph or not a full id. */
+    public int find(String id) {
+        Integer pos = tail.get(id);
+        if (pos != null) {
+            return pos;
+        }
+        if (id.length() != Utils.UID_LENGTH) {
+            return NONE;
+        }
+        byte[] raw = PackIndex.toRaw(id);
+        int first = raw[0] & 0xff;
+        int low = first == 0 ? 0 : fanout(first - 1);
+        int high = fanout(first) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /** return up to LIMIT ids of commits in the graph that start with the hex PREFIX, in order. */
+    public List<String> matches(String prefix, int limit) {
+        TreeSet<String> result = new TreeSet<>(PackIndex.matches(buffer, HEADER_SIZE, recordStart(0), RECORD_SIZE,
+                baseCount, prefix, limit));
+        for (String id : tail.keySet()) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<>(result).subList(0, Math.min(limit, result.size()));
+    }
+
+    public String idAt(int pos) {
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        buffer.get(recordStart(pos), raw);
+        return PackIndex.toHex(raw);
+    }
+
+    @Override
+    public int parentAt(int pos) {
+        return buffer.getInt(recordStart(pos) + 20);
+    }
+
+    @Override
+    public int secondParentAt(int pos) {
+        return buffer.getInt(recordStart(pos) + 24);
+    }
+
+    @Override
+    public long timeAt(int pos) {
+        return buffer.getLong(recordStart(pos) + 28);
+    }
+
+    /** return the root tree id of the commit at POS, or null if it has none. */
+    public String treeAt(int pos) {
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        buffer.get(recordStart(pos) + 36, raw);
+        return Arrays.equals(raw, new byte[raw.length]) ? null : PackIndex.toHex(raw);
+    }
+
+    @Override
+    public int generationAt(int pos) {
+        return buffer.getInt(recordStart(pos) + 56);
+    }
+
+    private int recordStart(int pos) {
+        return HEADER_SIZE + FANOUT_SIZE + pos * RECORD_SIZE;
+    }
+
+    private int fanout(int b) {
+        return buffer.getInt(HEADER_SIZE + b * 4);
+    }
+
+    private int compareId(int pos, byte[] raw) {
+        return PackIndex.compare(buffer, recordStart(pos), raw);
+    }
+
+    /** rebuild the graph from every commit in the repository. */
+    public static void write() {
+        List<Node> nodes = new ArrayList<>();
+        try (CommitScan scan = CommitScan.fromConfig()) {
+            scan.forEach(scan.ids(false), c -> nodes.add(new Node(c.getId(), c.getParent(), c.getSecondParent(),
+                    c.getTimeStamp().getTime(), c.getTreeId())));
+        }
+        write(nodes);
+    }
+
+    /** add the saved commit C to the graph, merging the tail into the base once it is long enough.
+     *  nothing is added if the repository has no graph or a parent of C is missing from it;
+     *  `gitlet commit-graph write` brings such a graph up to date. */
+    public static void append(Commit c) {
+        CommitGraph graph = read();
+        if (graph == null || graph.find(c.getId()) != NONE) {
+            return;
+        }
+        Node node = new Node(c.getId(), c.getParent(), c.getSecondParent(), c.getTimeStamp().getTime(),
+                c.getTreeId());
+        ByteBuffer record = graph.tailRecord(node);
+        if (record == null) {
+            return;
+        }
+        if (graph.count - graph.baseCount >= TAIL_LIMIT) {
+            List<Node> nodes = graph.nodes();
+            nodes.add(node);
+            write(nodes);
+            return;
+        }
+        try (FileChannel out = FileChannel.open(GRAPH_FILE.toPath(), StandardOpenOption.WRITE)) {
+            long end = graph.recordStart(graph.count);
+            out.truncate(end);
+            out.write(record, end);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return the record that appends NODE to the tail of this graph, or null if a parent of NODE is missing. */
+    ByteBuffer tailRecord(Node node) {
+        int parent = node.parent() == null ? NONE : find(node.parent());
+        int secondParent = node.secondParent() == null ? NONE : find(node.secondParent());
+        if ((node.parent() != null && parent == NONE) || (node.secondParent() != null && secondParent == NONE)) {
+            return null;
+        }
+        int generation = 1 + Math.max(parent == NONE ? 0 : generationAt(parent),
+                secondParent == NONE ? 0 : generationAt(secondParent));
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        putRecord(record, node.id(), parent, secondParent, node.time(), node.tree(), generation);
+        return record.flip();
+    }
+
+    /** return every commit in the graph as a Node. */
+    private List<Node> nodes() {
+        List<Node> nodes = new ArrayList<>();
+        for (int pos = 0; pos < count; pos++) {
+            int parent = parentAt(pos);
+            int secondParent = secondParentAt(pos);
+            nodes.add(new Node(idAt(pos), parent == NONE ? null : idAt(parent),
+                    secondParent == NONE ? null : idAt(secondParent), timeAt(pos), treeAt(pos)));
+        }
+        return nodes;
+    }
+
+    /** write NODES as the sorted base of a new graph file, replacing the old one. */
+    private static void write(List<Node> nodes) {
+        ByteBuffer out = encode(nodes);
+        File tmp = Utils.join(GITLET_DIR, "commit-graph.tmp");
+        Utils.writeContents(tmp, (Object) out.array());
+        try {
+            Files.move(tmp.toPath(), GRAPH_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return a graph file holding NODES, which are sorted by id in place, as its base. */
+    static ByteBuffer encode(List<Node> nodes) {
+        nodes.sort((a, b) -> a.id().compareTo(b.id()));
+        int n = nodes.size();
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            positions.put(nodes.get(i).id(), i);
+        }
+        int[] parents = new int[n];
+        int[] secondParents = new int[n];
+        for (int i = 0; i < n; i++) {
+            parents[i] = position(positions, nodes.get(i).parent());
+            secondParents[i] = position(positions, nodes.get(i).secondParent());
+        }
+        int[] generations = generations(parents, secondParents);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + FANOUT_SIZE + n * RECORD_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0);
+        int[] fanout = new int[256];
+        for (Node node : nodes) {
+            fanout[Integer.parseInt(node.id().substring(0, 2), 16)] += 1;
+        }
+        for (int b = 0, total = 0; b < 256; b++) {
+            total += fanout[b];
+            out.putInt(total);
+        }
+        for (int i = 0; i < n; i++) {
+            Node node = nodes.get(i);
+            putRecord(out, node.id(), parents[i], secondParents[i], node.time(), node.tree(), generations[i]);
+        }
+        return out;
+    }
+
+    private static int position(Map<String, Integer> positions, String id) {
+        Integer pos = id == null ? null : positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /** return the generation of every commit given the positions of their parents,
+     *  visiting parents before children without recursion, as histories can be long. */
+    private static int[] generations(int[] parents, int[] secondParents) {
+        int[] generations = new int[parents.length];
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int start = 0; start < parents.length; start++) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                int pos = stack.peek();
+                if (generations[pos] != 0) {
+                    stack.pop();
+                    continue;
+                }
+                int p = parents[pos];
+                int q = secondParents[pos];
+                if (p != NONE && generations[p] == 0) {
+                    stack.push(p);
+                } else if (q != NONE && generations[q] == 0) {
+                    stack.push(q);
+                } else {
+                    generations[pos] = 1 + Math.max(p == NONE ? 0 : generations[p], q == NONE ? 0 : generations[q]);
+                    stack.pop();
+                }
+            }
+        }
+        return generations;
+    }
+
+    private static void putRecord(ByteBuffer out, String id, int parent, int secondParent, long time,
+                                  String tree, int generation) {
+        out.put(PackIndex.toRaw(id)).putInt(parent).putInt(secondParent).putLong(time)
+                .put(tree == null ? new byte[PackIndex.RAW_ID_LENGTH] : PackIndex.toRaw(tree)).putInt(generation);
+    }
+}
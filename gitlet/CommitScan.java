@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static gitlet.Repository.COMMIT_DIR;
+
+/** Reads every commit of the repository on a pool of threads, for global-log, find and rebuilding
+ *  the commit-graph and message index.
+ *  Commits are decoded BATCH_SIZE at a time in parallel and handed out in a fixed order,
+ *  by id or newest first, so the output does not depend on the threads, and only one batch of
+ *  decoded commits is held at a time however many commits there are.
+ *  @author Haichao
+ */
+public class CommitScan implements AutoCloseable {
+
+    /** commits decoded together before they are handed out. */
+    public static final int BATCH_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+
+    private final File commitDir;
+
+    private final ObjectStore.Reader commits;
+
+    private record Dated(String id, long time) { }
+
+    /** a scan running on THREADS threads. */
+    public CommitScan(int threads) {
+        this(threads, COMMIT_DIR);
+    }
+
+    /** a scan of the commits in COMMITDIR running on THREADS threads. */
+    CommitScan(int threads, File commitDir) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Bad scan size: " + threads + " threads");
+        }
+        this.pool = Trace.pool(threads);
+        this.commitDir = commitDir;
+        this.commits = new ObjectStore.Reader(commitDir);
+    }
+
+    /** a scan using the thread count in the repository config, or one thread per core. */
+    public static CommitScan fromConfig() {
+        int threads = Config.getInt(Config.SCAN_THREADS, 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new CommitScan(threads);
+    }
+
+    /** return the id of every commit, in order, or newest first if BYDATE. */
+    public List<String> ids(boolean byDate) {
+        List<String> ids = new ArrayList<>();
+        ObjectStore.forEachId(commitDir, ids::add);
+        ids.sort(null);
+        return byDate ? sortByDate(ids) : ids;
+    }
+
+    /** return IDS newest first, equal times in id order. the times come from the commit-graph,
+     *  and only the commits missing from it are decoded. */
+    public List<String> sortByDate(List<String> ids) {
+        return sortByDate(ids, CommitGraph.read());
+    }
+
+    /** return IDS newest first, taking the times of the commits in GRAPH, which may be null, from it. */
+    List<String> sortByDate(List<String> ids, CommitGraph graph) {
+        long[] times = new long[ids.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            int pos = graph == null ? CommitDag.NONE : graph.find(ids.get(i));
+            if (pos == CommitDag.NONE) {
+                missing.add(i);
+            } else {
+                times[i] = graph.timeAt(pos);
+            }
+        }
+        int[] next = {0};
+        forEach(missing.stream().map(ids::get).toList(),
+                c -> times[missing.get(next[0]++)] = c.getTimeStamp().getTime());
+        List<Dated> dated = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            dated.add(new Dated(ids.get(i), times[i]));
+        }
+        dated.sort(Comparator.comparingLong(Dated::time).reversed().thenComparing(Dated::id));
+        return dated.stream().map(Dated::id).toList();
+    }
+
+    /** call ACTION with each commit of IDS, in the order of IDS, on the calling thread. */
+    public void forEach(List<String> ids, Consumer<Commit> action) {
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+            for (Commit c : read(batch)) {
+                action.accept(c);
+            }
+        }
+    }
+
+    /** return the commits IDS, decoded in parallel, in the order of IDS. */
+    private List<Commit> read(List<String> ids) {
+        if (ids.size() <= 1) {
+            return ids.stream().map(this::read).toList();
+        }
+        // a parallel stream started from a task of POOL runs on the threads of POOL.
+        return pool.submit(() -> ids.parallelStream().map(this::read).toList()).join();
+    }
+
+    private Commit read(String id) {
+        byte[] content = commits.read(id);
+        return content == null ? HelperMethods.getCommit(id) : Utils.deserialize(content, Commit.class);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
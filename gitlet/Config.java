@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+import static gitlet.Repository.GITLET_DIR;
+
+/** Per-repository settings, stored as key=value lines in .gitlet/config.
+ *  Missing keys fall back to the default given by the caller, so repositories
+ *  created before a setting existed keep working unchanged.
+ *  @author Haichao
+ */
+public class Config {
+
+    public static final File CONFIG_FILE = Utils.join(GITLET_DIR, "config");
+
+    /** zlib level used for new blobs, 0 stores them uncompressed. */
+    public static final String COMPRESSION = "core.compression";
+
+    /** comma separated file extensions whose blobs are always stored uncompressed. */
+    public static final String STORE_RAW = "core.storeRaw";
+
+    /** files of at least this many bytes are stored as content-defined chunks, 0 turns chunking off. */
+    public static final String CHUNK_THRESHOLD = "core.chunkThreshold";
+
+    /** longest chain of deltas repack builds, at most 255, 0 stores every packed blob in full. */
+    public static final String DELTA_DEPTH = "pack.deltaDepth";
+
+    /** threads used to hash working files, 0 uses one per core. */
+    public static final String HASH_THREADS = "core.hashThreads";
+
+    /** threads used by global-log and find to read commits, 0 uses one per core. */
+    public static final String SCAN_THREADS = "core.scanThreads";
+
+    /** total weight of the commits a command keeps in memory, see CommitCache. */
+    public static final String COMMIT_CACHE = "core.commitCache";
+
+    public static final String DEFAULT_STORE_RAW = "zip,jar,war,gz,tgz,bz2,xz,zst,7z,png,jpg,jpeg,gif,webp,mp3,mp4,pdf";
+
+    public static String get(String key, String defaultValue) {
+        return read().getProperty(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = read().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parse(key, value);
+    }
+
+    /** set KEY to VALUE, which must be in range if KEY is one of the numeric settings above. */
+    public static void set(String key, String value) {
+        switch (key) {
+            case COMPRESSION, CHUNK_THRESHOLD, DELTA_DEPTH, HASH_THREADS, SCAN_THREADS, COMMIT_CACHE ->
+                    parse(key, value);
+            default -> { }
+        }
+        Properties props = read();
+        props.setProperty(key, value);
+        try (OutputStream out = Files.newOutputStream(CONFIG_FILE.toPath())) {
+            props.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return VALUE of numeric setting KEY, which must be a zlib level for COMPRESSION, at most
+     *  Blob.MAX_DELTA_DEPTH for DELTA_DEPTH, and may not be negative. */
+    private static long parse(String key, String value) {
+        long result;
+        try {
+            result = Long.parseLong(value.trim());
+        } catch (NumberFormatException excp) {
+            throw new GitletException("Bad config value for " + key + ": " + value);
+        }
+        long min = key.equals(COMPRESSION) ? Deflater.DEFAULT_COMPRESSION : 0;
+        long max = switch (key) {
+            case COMPRESSION -> Deflater.BEST_COMPRESSION;
+            case DELTA_DEPTH -> Blob.MAX_DELTA_DEPTH;
+            default -> Long.MAX_VALUE;
+        };
+        if (result < min || result > max) {
+            throw new GitletException("Bad config value for " + key + ": " + value);
+        }
+        return result;
+    }
+
+    private static Properties read() {
+        Properties props = new Properties();
+        if (CONFIG_FILE.isFile()) {
+            try (InputStream in = Files.newInputStream(CONFIG_FILE.toPath())) {
+                props.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        return props;
+    }
+}
@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Repository.*;
+
+/** An opt-in server that runs the commands of one repository in a single long-lived JVM, so they
+ *  skip JVM startup and class loading, and find commits and packs already in memory.
+ *  `gitlet daemon` listens on the Unix-domain socket .gitlet/daemon.sock until `gitlet daemon stop`;
+ *  Client forwards its arguments to it and replays the output.
+ *  Protocol (big-endian): the client sends the argument count, then each argument as a length and
+ *  its UTF-8 bytes. The server answers with frames of a type, a length and that many bytes:
+ *  OUT and ERR carry output, and the last frame, EXIT, carries the exit status as an int.
+ *  Commands run one at a time on the daemon thread with System.out and System.err sent to the client,
+ *  so the output is byte for byte what `java gitlet.Main` prints. The commit cache and the mapped packs
+ *  belong to the daemon, which is the thread running the command; the index, branches and every other file are
+ *  read again by each command, as other processes may change them between commands.
+ *  @author Haichao
+ */
+public class Daemon extends Thread implements Trace.Holder, ObjectStore.Holder {
+
+    public static final File SOCKET_FILE = Utils.join(GITLET_DIR, "daemon.sock");
+
+    static final byte OUT = 1;
+
+    static final byte ERR = 2;
+
+    static final byte EXIT = 3;
+
+    /** largest frame of output, so a long output reaches the client while the command runs. */
+    private static final int FRAME_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+
+    private final CommitCache commits = CommitCache.fromConfig();
+
+    /** mapped packs by kind directory, dropped whenever the files in PACK_DIR change. */
+    private final Map<File, ObjectStore.Reader> readers = new HashMap<>();
+
+    private List<String> packNames = List.of();
+
+    private boolean stopping;
+
+    /** trace of the command being served, if it was run with --trace. */
+    private Trace trace;
+
+    private Daemon(ServerSocketChannel server) {
+        super("gitlet-daemon");
+        this.server = server;
+    }
+
+    /** return the commit cache kept between commands.
+     *  commands find it with `Thread.currentThread() instanceof Daemon daemon`, which only loads this
+     *  class, without initializing it, when a command runs in its own JVM. */
+    public CommitCache commits() {
+        return commits;
+    }
+
+    /** return the packs of a kind mapped by this daemon. */
+    @Override
+    public ObjectStore.Reader reader(File kindDir) {
+        return readers.computeIfAbsent(kindDir, ObjectStore.Reader::new);
+    }
+
+    @Override
+    public void forgetPacks() {
+        readers.clear();
+    }
+
+    @Override
+    public Trace trace() {
+        return trace;
+    }
+
+    /** count the operations of the command being served against TRACE, or nothing if it is null. */
+    void trace(Trace trace) {
+        this.trace = trace;
+    }
+
+    /** listen on SOCKET_FILE and run commands until a client sends `daemon stop`. */
+    public static void serve() {
+        if (SOCKET_FILE.exists()) {
+            if (answers()) {
+                throw new GitletException("A daemon is already running.");
+            }
+            // left behind by a daemon that was killed.
+            SOCKET_FILE.delete();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            Daemon daemon = new Daemon(server);
+            daemon.start();
+            daemon.join();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            SOCKET_FILE.delete();
+        }
+    }
+
+    /** return true if a daemon accepts connections on SOCKET_FILE. */
+    private static boolean answers() {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath())).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** ask the daemon of this repository to stop. */
+    public static void shutDown() {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()))) {
+            Client.forward(channel, new String[] {"daemon", "stop"});
+        } catch (IOException excp) {
+            throw new GitletException("No daemon is running.");
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!stopping) {
+            try (SocketChannel channel = server.accept()) {
+                handle(channel);
+            } catch (IOException excp) {
+                // the client went away; the next one is served as usual.
+            }
+        }
+    }
+
+    /** read one command from CHANNEL, run it, and send back its output and exit status. */
+    private void handle(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            byte[] arg = new byte[in.readInt()];
+            in.readFully(arg);
+            args[i] = new String(arg, StandardCharsets.UTF_8);
+        }
+        OutputStream raw = Channels.newOutputStream(channel);
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(raw, OUT), FRAME_SIZE));
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(raw, ERR), FRAME_SIZE));
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        System.setOut(out);
+        System.setErr(err);
+        int status = 0;
+        try {
+            refreshReaders();
+            if (args.length == 2 && args[0].equals("daemon") && args[1].equals("stop")) {
+                stopping = true;
+            } else if (args.length > 0 && args[0].equals("daemon")) {
+                throw new GitletException("A daemon is already running.");
+            } else {
+                Main.run(args);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (RuntimeException | Error excp) {
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        ByteBuffer exit = ByteBuffer.allocate(9).put(EXIT).putInt(4).putInt(status);
+        raw.write(exit.array());
+        raw.flush();
+    }
+
+    /** drop the mapped packs if packs were added or removed since the last command.
+     *  objects are only ever added to packs, so packs mapped earlier in a command stay correct. */
+    private void refreshReaders() {
+        List<String> names = Utils.plainFilenamesIn(PACK_DIR);
+        names = names == null ? List.of() : names;
+        if (!names.equals(packNames)) {
+            readers.clear();
+            packNames = names;
+        }
+    }
+
+    /** writes each chunk it is given to OUT as one frame of TYPE. */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final byte type;
+
+        FrameOutputStream(OutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.write(ByteBuffer.allocate(5).put(type).putInt(len).array());
+            out.write(b, off, len);
+        }
+    }
+}
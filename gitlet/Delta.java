@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Binary deltas between two versions of a file.
+ *  A delta is a zlib compressed list of instructions that rebuild the target from the base:
+ *      COPY offset length   copy LENGTH bytes of the base starting at OFFSET,
+ *      INSERT length bytes  append the LENGTH literal BYTES that follow.
+ *  Matches are found by indexing the base in BLOCK_SIZE blocks and extending each hit forward.
+ *  The target is searched at every offset with a rolling hash, so moving one byte costs O(1), not O(BLOCK_SIZE).
+ *  @author Haichao
+ */
+public class Delta {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private static final long MULTIPLIER = 31;
+
+    /** MULTIPLIER to the power BLOCK_SIZE, the weight of the byte leaving the window as it rolls. */
+    private static final long LEAVING_WEIGHT = power(MULTIPLIER, BLOCK_SIZE);
+
+    private static final byte COPY = 0;
+
+    private static final byte INSERT = 1;
+
+    /** return a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        Map<Long, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i += BLOCK_SIZE) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            int literalStart = 0;
+            int i = 0;
+            long hash = target.length >= BLOCK_SIZE ? blockHash(target, 0) : 0;
+            while (i + BLOCK_SIZE <= target.length) {
+                Integer match = blocks.get(hash);
+                int length = match == null ? 0 : matchLength(base, match, target, i);
+                if (length < BLOCK_SIZE) {
+                    if (i + BLOCK_SIZE < target.length) {
+                        hash = roll(hash, target[i], target[i + BLOCK_SIZE]);
+                    }
+                    i += 1;
+                    continue;
+                }
+                insert(out, target, literalStart, i);
+                out.writeByte(COPY);
+                out.writeInt(match);
+                out.writeInt(length);
+                i += length;
+                literalStart = i;
+                if (i + BLOCK_SIZE <= target.length) {
+                    hash = blockHash(target, i);
+                }
+            }
+            insert(out, target, literalStart, target.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** rebuild a target of TARGETLENGTH bytes by applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta, long targetLength) {
+        byte[] result = new byte[(int) targetLength];
+        int pos = 0;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(delta)))) {
+            while (pos < result.length) {
+                byte op = in.readByte();
+                int length;
+                if (op == COPY) {
+                    int offset = in.readInt();
+                    length = in.readInt();
+                    System.arraycopy(base, offset, result, pos, length);
+                } else {
+                    length = in.readInt();
+                    in.readFully(result, pos, length);
+                }
+                pos += length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return result;
+    }
+
+    private static void insert(DataOutputStream out, byte[] target, int from, int to) throws IOException {
+        if (to > from) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static int matchLength(byte[] base, int baseStart, byte[] target, int targetStart) {
+        int length = 0;
+        while (baseStart + length < base.length && targetStart + length < target.length
+                && base[baseStart + length] == target[targetStart + length]) {
+            length += 1;
+        }
+        return length;
+    }
+
+    /** return the polynomial hash of the BLOCK_SIZE bytes of DATA from START, modulo 2^64. */
+    static long blockHash(byte[] data, int start) {
+        long hash = 0;
+        for (int i = start; i < start + BLOCK_SIZE; i++) {
+            hash = hash * MULTIPLIER + (data[i] & 0xff);
+        }
+        return hash;
+    }
+
+    /** return the hash of the block one byte further on from the block hashing to HASH,
+     *  which starts with byte LEAVING and is followed by byte ENTERING. */
+    static long roll(long hash, byte leaving, byte entering) {
+        return hash * MULTIPLIER - (leaving & 0xff) * LEAVING_WEIGHT + (entering & 0xff);
+    }
+
+    private static long power(long base, int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Recently rebuilt blob contents, so reading several versions from the same delta chain
+ *  starts from the nearest cached version instead of the bottom of the chain each time.
+ *  Least recently used entries are evicted once the cached bytes exceed the budget.
+ *  @author Haichao
+ */
+public class DeltaCache {
+
+    private static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long budget;
+
+    private long size;
+
+    public DeltaCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public DeltaCache(long budget) {
+        this.budget = budget;
+    }
+
+    public byte[] get(String id) {
+        return entries.get(id);
+    }
+
+    public void put(String id, byte[] content) {
+        if (content.length > budget) {
+            return;
+        }
+        byte[] old = entries.put(id, content);
+        size += content.length - (old == null ? 0 : old.length);
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (size > budget && eldest.hasNext()) {
+            size -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+}
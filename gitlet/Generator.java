@@ -0,0 +1,248 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.HelperMethods.*;
+import static gitlet.Repository.COMMIT_DIR;
+
+/** Generates a synthetic repository of any size for benchmarks and scale tests, writing commits,
+ *  trees and blobs straight into the object store instead of running a command per commit.
+ *  java gitlet.Generator SEED [profile=production] [KEY=VALUE ...] fills a new repository in the
+ *  current directory; the keys are the fields of Profile. The same seed and profile always give
+ *  the same commits, trees, blobs and branches, with the same ids; only the stamp of the catalog,
+ *  which is new on every rebuild, differs.
+ *  The history is planned by next(), which touches no files, and written by generate().
+ *  Step 0 adds every file on main; each later step commits on one branch, first forking a new
+ *  branch from the head of another every commits / branches steps, and merging another branch
+ *  with probability mergeRate, so branches merge each other both ways and form criss-crosses.
+ *  A merge takes the files the merged branch changed since it was last merged anywhere.
+ *  @author Haichao
+ */
+public class Generator {
+
+    /** the shape of a generated history.
+     *  COMMITS commits over FILES files and BRANCHES branches besides main; a commit edits
+     *  EDITSPERCOMMIT files on average, mostly the first files as EDITSKEW grows (0 is uniform);
+     *  file sizes are log-normal around FILESIZEMEDIAN bytes with spread FILESIZESIGMA, at most
+     *  FILESIZEMAX; a commit is a merge with probability MERGERATE; CHECKOUT writes the files of
+     *  main to the working directory. */
+    public record Profile(int commits, int files, int branches, double editsPerCommit, double editSkew,
+                          int fileSizeMedian, double fileSizeSigma, int fileSizeMax, double mergeRate,
+                          boolean checkout) {
+
+        public static Profile small() {
+            return new Profile(1000, 1000, 8, 4, 1, 2048, 1, 1 << 20, 0.05, true);
+        }
+
+        /** return the scale of our largest production repository. */
+        public static Profile production() {
+            return new Profile(300_000, 150_000, 2000, 6, 1, 4096, 1.5, 4 << 20, 0.02, true);
+        }
+
+        /** return the profile named by the key "profile", small() if it is missing, with the other keys of
+         *  SETTINGS replacing its fields. */
+        public static Profile of(Properties settings) {
+            Profile base = switch (settings.getProperty("profile", "small")) {
+                case "small" -> small();
+                case "production" -> production();
+                default -> throw new GitletException("No profile with that name exists.");
+            };
+            try {
+                return new Profile(
+                        Integer.parseInt(settings.getProperty("commits", String.valueOf(base.commits))),
+                        Integer.parseInt(settings.getProperty("files", String.valueOf(base.files))),
+                        Integer.parseInt(settings.getProperty("branches", String.valueOf(base.branches))),
+                        Double.parseDouble(settings.getProperty("editsPerCommit", String.valueOf(base.editsPerCommit))),
+                        Double.parseDouble(settings.getProperty("editSkew", String.valueOf(base.editSkew))),
+                        Integer.parseInt(settings.getProperty("fileSizeMedian", String.valueOf(base.fileSizeMedian))),
+                        Double.parseDouble(settings.getProperty("fileSizeSigma", String.valueOf(base.fileSizeSigma))),
+                        Integer.parseInt(settings.getProperty("fileSizeMax", String.valueOf(base.fileSizeMax))),
+                        Double.parseDouble(settings.getProperty("mergeRate", String.valueOf(base.mergeRate))),
+                        Boolean.parseBoolean(settings.getProperty("checkout", String.valueOf(base.checkout))));
+            } catch (NumberFormatException excp) {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+    }
+
+    /** one planned commit on BRANCH, whose first parent is the head of FROM, which differs from BRANCH
+     *  only when BRANCH is forked at this step, merging the head of MERGED unless it is null.
+     *  EDITS maps each written path to its size; CONTENTSEED seeds the bytes of the files. */
+    public record Step(String branch, String from, String merged, long time,
+                       SortedMap<String, Integer> edits, long contentSeed) {
+    }
+
+    /** time of the first generated commit: 2020-01-01T00:00:00Z. */
+    private static final long START_TIME = 1_577_836_800_000L;
+
+    /** files per directory, and directories per top level directory, of generated paths. */
+    private static final int DIRECTORY_SIZE = 64;
+
+    private final Profile profile;
+
+    private final Random random;
+
+    private final List<String> branches = new ArrayList<>(List.of("main"));
+
+    private int steps;
+
+    private long time = START_TIME;
+
+    public Generator(Profile profile, long seed) {
+        this.profile = profile;
+        this.random = new Random(seed);
+    }
+
+    /** return the next commit of the history, or null once it has PROFILE.commits() commits. */
+    public Step next() {
+        if (steps == profile.commits()) {
+            return null;
+        }
+        int step = steps++;
+        time += 1000L * (1 + random.nextInt(3600));
+        SortedMap<String, Integer> edits = new TreeMap<>();
+        if (step == 0) {
+            for (int i = 0; i < profile.files(); i++) {
+                edits.put(path(i), fileSize());
+            }
+            return new Step("main", "main", null, time, edits, random.nextLong());
+        }
+        String from = pick(null);
+        String branch = from;
+        int created = branches.size() - 1;
+        if (created < profile.branches()
+                && step >= 1 + (long) created * (profile.commits() - 1) / profile.branches()) {
+            branch = "b" + created;
+            branches.add(branch);
+        }
+        String merged = null;
+        if (branch.equals(from) && branches.size() > 1 && random.nextDouble() < profile.mergeRate()) {
+            merged = pick(branch);
+        }
+        int count = Math.max(1, (int) Math.round(-profile.editsPerCommit() * Math.log(1 - random.nextDouble())));
+        for (int i = 0; i < count; i++) {
+            double u = Math.pow(random.nextDouble(), 1 + profile.editSkew());
+            edits.put(path((int) (u * profile.files())), fileSize());
+        }
+        return new Step(branch, from, merged, time, edits, random.nextLong());
+    }
+
+    /** return main half of the time and another branch otherwise, never EXCLUDED. */
+    private String pick(String excluded) {
+        String branch = random.nextBoolean() ? "main" : branches.get(random.nextInt(branches.size()));
+        if (branch.equals(excluded)) {
+            branch = branches.get((branches.indexOf(branch) + 1) % branches.size());
+        }
+        return branch;
+    }
+
+    private int fileSize() {
+        double size = profile.fileSizeMedian() * Math.exp(profile.fileSizeSigma() * random.nextGaussian());
+        return (int) Math.max(1, Math.min(profile.fileSizeMax(), size));
+    }
+
+    /** return the path of file I, in directories of DIRECTORY_SIZE files. */
+    static String path(int i) {
+        int dir = i / DIRECTORY_SIZE;
+        return "d" + dir / DIRECTORY_SIZE + "/d" + dir % DIRECTORY_SIZE + "/f" + i + ".txt";
+    }
+
+    /** initialize a repository in the working directory and write the history planned from SEED into it:
+     *  the commits, their trees and blobs, the branches, the commit-graph, message index and catalog,
+     *  and the files of main if PROFILE.checkout(). HEAD is main. return the head of each branch. */
+    public static Map<String, String> generate(Profile profile, long seed) {
+        Repository.init();
+        Generator generator = new Generator(profile, seed);
+        Blob.StoreOptions options = Blob.StoreOptions.fromConfig();
+        Map<String, Commit> heads = new HashMap<>();
+        heads.put("main", getCommit(getIdInBranch("main")));
+        // the files each branch changed since it was last merged, which its next merge brings along.
+        Map<String, Map<String, String>> unmerged = new HashMap<>();
+        for (Step step = generator.next(); step != null; step = generator.next()) {
+            Commit merged = step.merged() == null ? null : heads.get(step.merged());
+            String message = merged == null
+                    ? "Edit " + step.edits().size() + (step.edits().size() == 1 ? " file" : " files")
+                            + " on " + step.branch() + "."
+                    : "Merged " + step.merged() + " into " + step.branch() + ".";
+            Commit c = new Commit(new Date(step.time()), message, heads.get(step.from()), merged);
+            Map<String, String> changes = new HashMap<>();
+            if (merged != null) {
+                Map<String, String> brought = unmerged.remove(step.merged());
+                if (brought != null) {
+                    changes.putAll(brought);
+                }
+            }
+            Random contents = new Random(step.contentSeed());
+            for (Map.Entry<String, Integer> edit : step.edits().entrySet()) {
+                String path = edit.getKey();
+                changes.put(path, Blob.store(path.substring(path.lastIndexOf('/') + 1),
+                        contents(contents, edit.getValue()), options));
+            }
+            c.updateFiles(changes);
+            // the commit-graph, message index and catalog are rebuilt once at the end, not appended to.
+            c.writeTree();
+            ObjectStore.write(COMMIT_DIR, c.getId(), Utils.serialize(c));
+            heads.put(step.branch(), c);
+            unmerged.computeIfAbsent(step.branch(), b -> new HashMap<>()).putAll(changes);
+        }
+        Map<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, Commit> head : heads.entrySet()) {
+            updateBranch(head.getKey(), head.getValue().getId());
+            result.put(head.getKey(), head.getValue().getId());
+        }
+        CommitGraph.write();
+        MessageIndex.write();
+        Catalog.write();
+        if (profile.checkout()) {
+            DeltaCache cache = new DeltaCache();
+            for (Map.Entry<String, String> file : heads.get("main").getTrackedFiles().entrySet()) {
+                writeBlobToFile(file.getValue(), file.getKey(), cache);
+            }
+        }
+        return result;
+    }
+
+    /** return SIZE bytes of text: lines of letters, drawn from RANDOM. */
+    private static byte[] contents(Random random, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = i % 64 == 63 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Generator SEED [profile=small|production] [KEY=VALUE ...]");
+            return;
+        }
+        try {
+            if (Repository.GITLET_DIR.exists()) {
+                throw new GitletException("A Gitlet version-control system already exists in the current directory.");
+            }
+            Properties settings = new Properties();
+            for (int i = 1; i < args.length; i++) {
+                int eq = args[i].indexOf('=');
+                if (eq < 0) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                settings.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+            Profile profile = Profile.of(settings);
+            Map<String, String> heads = generate(profile, Long.parseLong(args[0]));
+            System.out.println("Generated " + profile.commits() + " commits on " + heads.size() + " branches.");
+        } catch (NumberFormatException excp) {
+            System.out.println("Incorrect operands.");
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+}
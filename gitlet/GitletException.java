@@ -2,6 +2,8 @@ package gitlet;
 
 /** General exception indicating a Gitlet error.  For fatal errors, the
  *  result of .getMessage() is the error message to be printed.
+ *  Commands throw it instead of exiting, so the JVM running them decides what a failure ends:
+ *  Main exits, while a Daemon reports it to the client and goes on serving.
  *  @author P. N. Hilfinger
  */
 class GitletException extends RuntimeException {
@@ -2,7 +2,14 @@ package gitlet;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.TreeMap;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static gitlet.Repository.*;
 import static gitlet.Utils.*;
@@ -11,6 +18,8 @@ public class HelperMethods {
 
     private static final int ID_LENGTH = 40;
 
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
     public static boolean isInitialized() {
         return Utils.join(CWD, ".gitlet").exists();
     }
@@ -18,24 +27,37 @@ public class HelperMethods {
     public static File findFile(String fileName) {
         File f = Utils.join(CWD, fileName);
         if (!f.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw new GitletException("File does not exist.");
         }
         return f;
     }
 
-    // hash id of a file is attained by concatenating file content byte array with file name byte array;
+    // hash id of a file is attained by hashing file content followed by the file name bytes;
+    // the content is read in fixed-size chunks, so any file size hashes in constant memory.
     public static String sha1Helper(File f) {
-        byte[] concatenatedArray = concatenateByteArrays(Utils.readContents(f),
-                f.getName().getBytes(StandardCharsets.UTF_8));
-        return Utils.sha1((Object) concatenatedArray);
+        return sha1Helper(f, new byte[HASH_BUFFER_SIZE]);
     }
 
-    private static byte[] concatenateByteArrays(byte[] array1, byte[] array2) {
-        byte[] result = new byte[array1.length + array2.length];
-        System.arraycopy(array1, 0, result, 0, array1.length);
-        System.arraycopy(array2, 0, result, array1.length, array2.length);
-        return result;
+    /** return the blob id of working file F, reading it through BUFFER. */
+    public static String sha1Helper(File f, byte[] buffer) {
+        MessageDigest md = sha1Digest();
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+        return PackIndex.toHex(md.digest());
+    }
+
+    public static MessageDigest sha1Digest() {
+        try {
+            return Trace.digest(MessageDigest.getInstance("SHA-1"));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
     }
 
     public static void updateBranch(String branchName, String id) {
@@ -46,8 +68,7 @@ public class HelperMethods {
     public static String getIdInBranch(String branchName) {
         File branchFile = Utils.join(BRANCHES, branchName);
         if (!branchFile.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+            throw new GitletException("No such branch exists.");
         }
         return Utils.readContentsAsString(branchFile);
     }
@@ -60,53 +81,118 @@ public class HelperMethods {
         Utils.writeContents(HEAD, branchName);
     }
 
-    public static TreeMap<String, String> getStage(String stageName) {
-        return Utils.readObject(Utils.join(STAGE_DIR, stageName), TreeMap.class);
+    /** return commit ID, read without a cache. commands pass theirs, from CommitCache.forCommand(). */
+    public static Commit getCommit(String id) {
+        return getCommit(id, null);
     }
 
-    public static Commit getCommit(String id) {
-        int len = id.length();
-        if (len < ID_LENGTH) {
-            for (String ids : Utils.plainFilenamesIn(COMMIT_DIR)) {
-                if (ids.substring(0, len).equals(id)) {
-                    id = ids;
-                }
-            }
+    /** return commit ID, which may be abbreviated, from CACHE if it holds it, adding it otherwise.
+     *  CACHE may be null. */
+    public static Commit getCommit(String id, CommitCache cache) {
+        long start = Trace.start();
+        if (id.length() < ID_LENGTH) {
+            id = resolveCommitId(id);
+        }
+        Commit c = cache == null || id == null ? null : cache.get(id);
+        if (c != null) {
+            Trace.end(Trace.GET_COMMIT, start, 0);
+            return c;
+        }
+        byte[] content = id == null ? null : ObjectStore.read(COMMIT_DIR, id);
+        if (content == null) {
+            throw new GitletException("No commit with that id exists.");
         }
-        File commitFile = Utils.join(COMMIT_DIR, id);
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        c = Utils.deserialize(content, Commit.class);
+        if (cache != null) {
+            cache.put(c);
         }
-        return Utils.readObject(commitFile, Commit.class);
+        Trace.end(Trace.GET_COMMIT, start, content.length);
+        return c;
+    }
+
+    /** return the full id of the one commit whose id starts with PREFIX, or null if there is none.
+     *  the commit-graph is searched first, which lists no commits. unless it already found two
+     *  matches, the loose and packed commits are searched too, as commits missing from the graph
+     *  may match as well and make the prefix ambiguous. */
+    private static String resolveCommitId(String prefix) {
+        Set<String> matches = new TreeSet<>();
+        CommitGraph graph = CommitGraph.read();
+        if (graph != null) {
+            matches.addAll(graph.matches(prefix, 2));
+        }
+        if (matches.size() < 2) {
+            matches.addAll(ObjectStore.matches(COMMIT_DIR, prefix, 2));
+        }
+        if (matches.size() > 1) {
+            throw new GitletException("Ambiguous commit id.");
+        }
+        return matches.isEmpty() ? null : matches.iterator().next();
     }
 
     public static void saveCommit(Commit c) {
-        File commit = Utils.join(COMMIT_DIR, c.getId());
-        Utils.writeObject(commit, c);
+        c.writeTree();
+        ObjectStore.write(COMMIT_DIR, c.getId(), Utils.serialize(c));
+        CommitGraph.append(c);
+        MessageIndex.append(c);
+        Catalog.append(c);
     }
 
-    public static void saveStage(String stageName, TreeMap<String, String> map) {
-        File stageFile = Utils.join(STAGE_DIR, stageName);
-        Utils.writeObject(stageFile, map);
+    /** store the content of f as a blob and return its id. */
+    public static String saveFileAsBlob(File f) {
+        return Blob.store(f);
     }
 
-    public static void saveFileAsBlob(File f, String id) {
-        File blobFile = Utils.join(BLOBS_DIR, id);
-        Blob b = new Blob(Utils.readContents(f));
-        Utils.writeObject(blobFile, b);
+    /** retrieve the file from a blob using blobId and put it in CWD with name outPutFileName.
+     *  the content is streamed or copied channel to channel, so it is never held in memory as a whole. */
+    public static void writeBlobToFile(String blobId, String outPutFileName) {
+        writeBlobToFile(blobId, outPutFileName, new DeltaCache());
     }
 
-    /** retrieve the file from a blob using blobId and put it in CWD with name outPutFileName. */
-    public static void writeBlobToFile(String blobId, String outPutFileName) {
-        Blob b = findBlob(blobId);
-        byte[] content = b.getContents();
-        writeContents(Utils.join(CWD, outPutFileName), (Object) content);
+    public static void writeBlobToFile(String blobId, String outPutFileName, DeltaCache cache) {
+        File f = Utils.join(CWD, outPutFileName);
+        f.getParentFile().mkdirs();
+        if (!Blob.writeTo(blobId, f, cache)) {
+            throw new GitletException("No blob with the ID found.");
+        }
+    }
+
+    /** delete working file FILENAME and the directories above it that are left empty. */
+    public static void deleteWorkingFile(String fileName) {
+        File f = Utils.join(CWD, fileName);
+        f.delete();
+        for (File dir = f.getParentFile(); !dir.equals(CWD) && dir.delete(); dir = dir.getParentFile()) {
+            // keep going up while directories are empty.
+        }
+    }
+
+    /** return the paths of all plain files under the working directory, relative to it and
+     *  separated by '/', in lexicographic order. the .gitlet directory is skipped. */
+    public static List<String> workingFiles() {
+        List<String> result = new ArrayList<>();
+        addWorkingFiles(CWD, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void addWorkingFiles(File dir, String prefix, List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File f = new File(dir, name);
+            if (f.isFile()) {
+                result.add(prefix + name);
+            } else if (f.isDirectory() && !f.equals(GITLET_DIR)) {
+                addWorkingFiles(f, prefix + name + "/", result);
+            }
+        }
     }
 
     public static void clearAndSaveStage() {
-        saveStage("additionStage", new TreeMap<>());
-        saveStage("removalStage", new TreeMap<>());
+        Index index = Index.read();
+        index.clearStage();
+        index.write();
     }
 
     public static String getStringFromBlob(String blobId) {
@@ -118,10 +204,12 @@ public class HelperMethods {
     }
 
     public static Blob findBlob(String blobId) {
-        File blobFile = Utils.join(BLOBS_DIR, blobId);
-        if (!blobFile.exists()) {
+        long start = Trace.start();
+        byte[] content = Blob.read(blobId);
+        if (content == null) {
             throw new GitletException("No blob with the ID found.");
         }
-        return readObject(blobFile, Blob.class);
+        Trace.end(Trace.FIND_BLOB, start, content.length);
+        return new Blob(content);
     }
 }
@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static gitlet.Repository.*;
+
+/** The staging area and a cache of working file metadata, stored in one binary file, .gitlet/index.
+ *  Layout (big-endian): magic "GLIX", version, entry count, CRC32 of the entries, then per path in order:
+ *      path length (short), path (UTF-8), flags, raw blob id (20 bytes), mode, size, mtime (ns), inode.
+ *  Flags say whether the path is staged for addition, staged for removal, and whether the
+ *  stat fields describe the working file that hashes to the blob id.
+ *  A working file whose size, mtime, inode and mode still match its entry is known to hash to
+ *  that id without reading it. Metadata of files modified within RACY_NANOS of writing the index is
+ *  not saved, as a later change in the same timestamp tick would leave the metadata unchanged.
+ *  @author Haichao
+ */
+public class Index {
+
+    public static final File INDEX_FILE = Utils.join(GITLET_DIR, "index");
+
+    static final int MAGIC = 0x474c4958;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte ADDED = 1;
+
+    private static final byte REMOVED = 2;
+
+    private static final byte HAS_STAT = 4;
+
+    /** covers the timestamp granularity of common file systems. */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** the metadata of a working file when it was last hashed. */
+    public record Stat(int mode, long size, long mtime, long inode) {
+
+        /** return the current metadata of F, or null if it does not exist. */
+        public static Stat of(File f) {
+            try {
+                Map<String, Object> unix = Files.readAttributes(f.toPath(), "unix:mode,size,lastModifiedTime,ino",
+                        LinkOption.NOFOLLOW_LINKS);
+                return new Stat((Integer) unix.get("mode"), (Long) unix.get("size"),
+                        ((FileTime) unix.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+                        (Long) unix.get("ino"));
+            } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                return basic(f);
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        private static Stat basic(File f) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+                Object key = attrs.fileKey();
+                return new Stat(f.canExecute() ? 0755 : 0644, attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), key == null ? 0 : key.hashCode());
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+    }
+
+    private record Cached(String id, Stat stat) { }
+
+    private final TreeMap<String, String> additions = new TreeMap<>();
+
+    private final TreeMap<String, String> removals = new TreeMap<>();
+
+    private final Map<String, Cached> stats = new HashMap<>();
+
+    /** whether STATS changed since the index was read. */
+    private boolean statsChanged;
+
+    /** read the index, converting the serialized stage maps of older repositories if there is no index yet. */
+    @SuppressWarnings("unchecked")
+    public static Index read() {
+        Index index = new Index();
+        if (!INDEX_FILE.isFile()) {
+            if (ADDITION_STAGE.isFile()) {
+                index.additions.putAll(Utils.readObject(ADDITION_STAGE, TreeMap.class));
+            }
+            if (REMOVAL_STAGE.isFile()) {
+                index.removals.putAll(Utils.readObject(REMOVAL_STAGE, TreeMap.class));
+            }
+            return index;
+        }
+        byte[] content = Utils.readContents(INDEX_FILE);
+        ByteBuffer in = ByteBuffer.wrap(content);
+        if (content.length < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new GitletException("Corrupt index file.");
+        }
+        int count = in.getInt();
+        int checksum = in.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(content, HEADER_SIZE, content.length - HEADER_SIZE);
+        if ((int) crc.getValue() != checksum) {
+            throw new GitletException("Corrupt index file.");
+        }
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            byte[] path = new byte[in.getShort() & 0xffff];
+            in.get(path);
+            String name = new String(path, StandardCharsets.UTF_8);
+            byte flags = in.get();
+            in.get(raw);
+            String id = PackIndex.toHex(raw);
+            Stat stat = new Stat(in.getInt(), in.getLong(), in.getLong(), in.getLong());
+            if ((flags & ADDED) != 0) {
+                index.additions.put(name, id);
+            }
+            if ((flags & REMOVED) != 0) {
+                index.removals.put(name, id);
+            }
+            if ((flags & HAS_STAT) != 0) {
+                index.stats.put(name, new Cached(id, stat));
+            }
+        }
+        return index;
+    }
+
+    /** write the index to a temporary file and move it over the old one. */
+    public void write() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        TreeSet<String> paths = new TreeSet<>(additions.keySet());
+        paths.addAll(removals.keySet());
+        paths.addAll(stats.keySet());
+        long racyAfter = System.currentTimeMillis() * 1_000_000 - RACY_NANOS;
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            for (String path : paths) {
+                String id = additions.containsKey(path) ? additions.get(path) : removals.get(path);
+                Cached cached = stats.get(path);
+                byte flags = 0;
+                flags |= additions.containsKey(path) ? ADDED : 0;
+                flags |= removals.containsKey(path) ? REMOVED : 0;
+                if (cached != null && cached.stat().mtime() < racyAfter
+                        && (id == null || id.equals(cached.id()))) {
+                    flags |= HAS_STAT;
+                    id = cached.id();
+                }
+                if (id == null) {
+                    continue;
+                }
+                byte[] name = path.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeByte(flags);
+                out.write(PackIndex.toRaw(id));
+                Stat stat = (flags & HAS_STAT) != 0 ? cached.stat() : new Stat(0, 0, 0, 0);
+                out.writeInt(stat.mode());
+                out.writeLong(stat.size());
+                out.writeLong(stat.mtime());
+                out.writeLong(stat.inode());
+                count += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        byte[] entries = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(entries);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt((int) crc.getValue());
+        File tmp = Utils.join(GITLET_DIR, "index.tmp");
+        Utils.writeContents(tmp, header.array(), entries);
+        try {
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        ADDITION_STAGE.delete();
+        REMOVAL_STAGE.delete();
+        STAGE_DIR.delete();
+    }
+
+    /** write the index only if working file metadata was recorded or dropped since it was read. */
+    public void writeIfChanged() {
+        if (statsChanged) {
+            write();
+        }
+    }
+
+    /** the files staged for addition, file name : blob id. */
+    public TreeMap<String, String> getAdditions() {
+        return additions;
+    }
+
+    /** the files staged for removal, file name : blob id. */
+    public TreeMap<String, String> getRemovals() {
+        return removals;
+    }
+
+    public void clearStage() {
+        additions.clear();
+        removals.clear();
+    }
+
+    /** return the blob id of working file F named FILENAME if its metadata shows it is unchanged
+     *  since it was last hashed, or null if it has to be hashed again. */
+    public String cachedId(String fileName, File f) {
+        Cached cached = stats.get(fileName);
+        if (cached == null) {
+            return null;
+        }
+        Stat now = Stat.of(f);
+        if (now == null || !now.equals(cached.stat())) {
+            return null;
+        }
+        return cached.id();
+    }
+
+    /** remember that working file F named FILENAME currently hashes to ID. */
+    public void recordStat(String fileName, File f, String id) {
+        Stat stat = Stat.of(f);
+        if (stat == null) {
+            stats.remove(fileName);
+        } else {
+            stats.put(fileName, new Cached(id, stat));
+        }
+        statsChanged = true;
+    }
+
+    /** return the names in EXPECTED (file name : blob id) whose working files are missing or
+     *  no longer hash to their blob id. Only files whose metadata changed, and whose size alone
+     *  cannot tell, are read, and those are hashed together with HASHER. */
+    public TreeSet<String> changed(Map<String, String> expected, ParallelHasher hasher) {
+        TreeSet<String> changed = new TreeSet<>();
+        Map<String, File> stale = new HashMap<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String fileName = entry.getKey();
+            File f = Utils.join(CWD, fileName);
+            Cached cached = stats.get(fileName);
+            Stat now = Stat.of(f);
+            if (needsHash(cached, now, entry.getValue())) {
+                stale.put(fileName, f);
+            } else if (now == null || !cached.id().equals(entry.getValue()) || !now.equals(cached.stat())) {
+                changed.add(fileName);
+            }
+        }
+        for (Map.Entry<String, String> entry : hasher.hash(stale).entrySet()) {
+            recordStat(entry.getKey(), stale.get(entry.getKey()), entry.getValue());
+            if (!entry.getValue().equals(expected.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    /** an existing file only needs hashing if its metadata no longer matches CACHED,
+     *  unless it last hashed to ID and its size changed since. */
+    private static boolean needsHash(Cached cached, Stat now, String id) {
+        if (now == null) {
+            return false;
+        }
+        if (cached == null) {
+            return true;
+        }
+        return !now.equals(cached.stat()) && !(cached.id().equals(id) && now.size() != cached.stat().size());
+    }
+
+    public void forgetStat(String fileName) {
+        statsChanged |= stats.remove(fileName) != null;
+    }
+}
@@ -1,5 +1,9 @@
 package gitlet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static gitlet.HelperMethods.isInitialized;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -15,10 +19,30 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
             System.exit(0);
         }
+    }
+
+    /** run the command in ARGS, throwing a GitletException with the message to print if it fails.
+     *  the command never exits the JVM, so a Daemon can run many of them. */
+    public static void run(String[] args) {
+        if (args.length > 0 && (args[0].equals("--trace") || args[0].equals("--trace=json"))) {
+            String[] command = Arrays.copyOfRange(args, 1, args.length);
+            Trace trace = new Trace();
+            try {
+                trace.run(() -> run(command));
+            } finally {
+                trace.report(System.err, String.join(" ", command), args[0].equals("--trace=json"));
+            }
+            return;
+        }
+        if (args.length == 0) {
+            throw new GitletException("Please enter a command.");
+        }
         String firstArg = args[0];
         if (firstArg.equals("init")) {
             Repository.init();
@@ -30,12 +54,11 @@ public class Main {
         }
         switch (firstArg) {
             case "add":
-                Repository.add(args[1]);
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 if (args.length == 1 || args[1].isEmpty()) {
-                    System.out.println("Please enter a commit message.");
-                    System.exit(0);
+                    throw new GitletException("Please enter a commit message.");
                 }
                 Repository.commit(args[1]);
                 break;
@@ -43,21 +66,36 @@ public class Main {
                 Repository.rm(args[1]);
                 break;
             case "log":
-                Repository.log();
+                Repository.LogOptions options = Repository.LogOptions.parse(Arrays.copyOfRange(args, 1, args.length));
+                if (options == null) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Repository.log(options);
                 break;
             case "global-log":
-                Repository.globalLog();
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("--date-order"))) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Repository.globalLog(args.length == 2);
                 break;
             case "find":
-                Repository.find(args[1]);
+                List<String> operands = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+                boolean byDate = operands.remove("--date-order");
+                if (operands.size() == 1) {
+                    Repository.find(null, operands.get(0), byDate);
+                } else if (operands.size() == 2
+                        && (operands.get(0).equals("--contains") || operands.get(0).equals("--regex"))) {
+                    Repository.find(operands.get(0), operands.get(1), byDate);
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
                 break;
             case "status":
                 Repository.status();
                 break;
             case "restore":
                 if (args.length > 4 || !(args[2].equals("--") || args[1].equals("--"))) {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
+                    throw new GitletException("Incorrect operands.");
                 }
                 if (args.length == 3) {
                     Repository.restore(null, args[2]);
@@ -80,9 +118,57 @@ public class Main {
             case "merge":
                 Repository.merge(args[1]);
                 break;
+            case "repack":
+                ObjectStore.repack();
+                break;
+            case "commit-graph":
+                if (args.length != 2 || !args[1].equals("write")) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                CommitGraph.write();
+                break;
+            case "catalog":
+                if (args.length != 2 || !(args[1].equals("verify") || args[1].equals("rebuild"))) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                if (args[1].equals("rebuild")) {
+                    Catalog.write();
+                    break;
+                }
+                Catalog catalog = Catalog.read();
+                List<String> problems = catalog == null ? List.of("no catalog") : catalog.verify();
+                for (String problem : problems) {
+                    System.out.println(problem);
+                }
+                System.out.println(problems.isEmpty() ? "The catalog matches the object store."
+                        : "The catalog does not match the object store; run `gitlet catalog rebuild`.");
+                break;
+            case "message-index":
+                if (args.length != 2 || !args[1].equals("write")) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                MessageIndex.write();
+                break;
+            case "daemon":
+                if (args.length == 2 && args[1].equals("stop")) {
+                    Daemon.shutDown();
+                } else if (args.length == 1) {
+                    Daemon.serve();
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "migrate":
+                System.out.println("Moved " + ObjectStore.migrate() + " loose objects into fan-out directories.");
+                break;
+            case "config":
+                if (args.length != 3) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Config.set(args[1], args[2]);
+                break;
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                throw new GitletException("No command with that name exists.");
         }
     }
 }
@@ -1,15 +1,47 @@
 package gitlet;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 
 import static gitlet.HelperMethods.*;
 
 public class MergeHelper {
 
-    /** find the common split point commit object given two commit objects */
-    public static Commit findSplitPoint(Commit pointer1, Commit pointer2) {
+    /** paints of the merge base walk: reachable from the first or second commit, below a base, a base. */
+    private static final int PARENT1 = 1;
+
+    private static final int PARENT2 = 2;
+
+    private static final int STALE = 4;
+
+    private static final int RESULT = 8;
+
+    /** set while the commit is waiting in the queue, so it is only queued once at a time. */
+    private static final int QUEUED = 16;
+
+    /** find the common split point commit object given two commit objects.
+     *  with a commit-graph this is the most recent of their merge bases,
+     *  otherwise the first common ancestor found breadth first from POINTER2.
+     *  commits are read through COMMITS, as the walks reach the same ones again. */
+    public static Commit findSplitPoint(Commit pointer1, Commit pointer2, CommitCache commits) {
+        CommitGraph graph = CommitGraph.read();
+        if (graph != null) {
+            int pos1 = graph.find(pointer1.getId());
+            int pos2 = graph.find(pointer2.getId());
+            if (pos1 != CommitDag.NONE && pos2 != CommitDag.NONE) {
+                List<Integer> bases = mergeBases(graph, pos1, pos2);
+                return bases.isEmpty() ? null : getCommit(graph.idAt(bases.get(0)), commits);
+            }
+        }
         HashSet<String> branch1Records = new HashSet<>();
         Queue<Commit> queue = new LinkedList<>();
 
@@ -18,10 +50,10 @@ public class MergeHelper {
             Commit current = queue.poll();
             if (current != null && branch1Records.add(current.getId())) {
                 if (current.getParent() != null) {
-                    queue.add(getCommit(current.getParent()));
+                    queue.add(getCommit(current.getParent(), commits));
                 }
                 if (current.getSecondParent() != null) {
-                    queue.add(getCommit(current.getSecondParent()));
+                    queue.add(getCommit(current.getSecondParent(), commits));
                 }
             }
         }
@@ -34,10 +66,10 @@ public class MergeHelper {
                     return current;
                 }
                 if (current.getParent() != null) {
-                    queue.add(getCommit(current.getParent()));
+                    queue.add(getCommit(current.getParent(), commits));
                 }
                 if (current.getSecondParent() != null) {
-                    queue.add(getCommit(current.getSecondParent()));
+                    queue.add(getCommit(current.getSecondParent(), commits));
                 }
             }
         }
@@ -45,4 +77,103 @@ public class MergeHelper {
         // If no common ancestor is found, return null
         return null;
     }
+
+    /** return the best common ancestors of the commits at POS1 and POS2 in GRAPH, most recent first:
+     *  the common ancestors that are not ancestors of another common ancestor. A criss-cross
+     *  history has more than one.
+     *  Commits are visited newest first, by generation then time, carrying a paint for each side
+     *  they are reachable from. A commit painted by both sides is a candidate, and everything below
+     *  it is marked stale; the walk stops as soon as only stale commits are left, so it only looks
+     *  at the history between the two commits and their bases, and only keeps paint for those. */
+    public static List<Integer> mergeBases(CommitDag graph, int pos1, int pos2) {
+        List<Integer> result = new ArrayList<>();
+        if (pos1 == pos2) {
+            result.add(pos1);
+            return result;
+        }
+        Map<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> newestFirst(graph, a, b));
+        flags.put(pos1, PARENT1 | QUEUED);
+        flags.put(pos2, PARENT2 | QUEUED);
+        queue.add(pos1);
+        queue.add(pos2);
+        // queued commits that are not stale; the walk is over when there are none.
+        int nonStale = 2;
+        while (nonStale > 0) {
+            int current = queue.poll();
+            int currentFlags = flags.get(current) & ~QUEUED;
+            int paint = currentFlags & (PARENT1 | PARENT2 | STALE);
+            if ((paint & STALE) == 0) {
+                nonStale -= 1;
+            }
+            if (paint == (PARENT1 | PARENT2)) {
+                if ((currentFlags & RESULT) == 0) {
+                    currentFlags |= RESULT;
+                    result.add(current);
+                }
+                paint |= STALE;
+            }
+            flags.put(current, currentFlags);
+            for (int parent : new int[] {graph.parentAt(current), graph.secondParentAt(current)}) {
+                int parentFlags = parent == CommitDag.NONE ? 0 : flags.getOrDefault(parent, 0);
+                if (parent == CommitDag.NONE || (parentFlags & paint) == paint) {
+                    continue;
+                }
+                if ((parentFlags & QUEUED) == 0) {
+                    queue.add(parent);
+                    nonStale += (paint & STALE) == 0 ? 1 : 0;
+                } else if ((parentFlags & STALE) == 0 && (paint & STALE) != 0) {
+                    nonStale -= 1;
+                }
+                flags.put(parent, parentFlags | paint | QUEUED);
+            }
+        }
+        // a candidate found before a commit below it was marked stale can still be an ancestor of another.
+        List<Integer> best = new ArrayList<>();
+        for (int candidate : result) {
+            if ((flags.get(candidate) & STALE) != 0) {
+                continue;
+            }
+            boolean redundant = false;
+            for (int other : result) {
+                if (other != candidate && reaches(graph, other, candidate)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                best.add(candidate);
+            }
+        }
+        best.sort((a, b) -> newestFirst(graph, a, b));
+        return best;
+    }
+
+    private static int newestFirst(CommitDag graph, int a, int b) {
+        int cmp = Integer.compare(graph.generationAt(b), graph.generationAt(a));
+        if (cmp == 0) {
+            cmp = Long.compare(graph.timeAt(b), graph.timeAt(a));
+        }
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+
+    /** return true if TARGET is an ancestor of FROM, not looking below the generation of TARGET. */
+    private static boolean reaches(CommitDag graph, int from, int target) {
+        int floor = graph.generationAt(target);
+        Deque<Integer> stack = new ArrayDeque<>();
+        Set<Integer> seen = new HashSet<>();
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            if (current == target) {
+                return true;
+            }
+            if (current == CommitDag.NONE || graph.generationAt(current) <= floor || !seen.add(current)) {
+                continue;
+            }
+            stack.push(graph.parentAt(current));
+            stack.push(graph.secondParentAt(current));
+        }
+        return false;
+    }
 }
@@ -0,0 +1,394 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static gitlet.Repository.*;
+
+/** The message of every commit in one memory mapped file, so that find never opens a commit.
+ *  Layout (big-endian): magic "GLMI", version, base record count, token count, hash table size,
+ *  end of the base, then
+ *      record offsets (int per record), the hash table of exact messages (int per slot),
+ *      token offsets (int per token, tokens in order), the tokens, the records,
+ *  and after the base a tail of records appended by commit and merge, in the order they were made.
+ *  A record is: raw id (20 bytes), message length (int), message (UTF-8).
+ *  A hash table slot holds one more than the number of a record whose message has that String hash,
+ *  or 0 if it is empty; collisions go to the next slot.
+ *  A token is a run of at most MAX_TOKEN_LENGTH letters and digits; each holds its length (short),
+ *  its UTF-8 bytes, and the ascending numbers of the base records whose message contains it
+ *  (count, then an int each).
+ *  @author Haichao
+ */
+public class MessageIndex {
+
+    public static final File INDEX_FILE = Utils.join(GITLET_DIR, "message-index");
+
+    static final int MAGIC = 0x474c4d49;
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int RECORD_HEADER_SIZE = PackIndex.RAW_ID_LENGTH + 4;
+
+    /** longer runs of letters and digits are not indexed, and not looked up. */
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    /** the tail is merged into the base once it holds this many records. */
+    private static final int TAIL_LIMIT = 1024;
+
+    private final ByteBuffer buffer;
+
+    private final int baseCount;
+
+    private final int tokenCount;
+
+    private final int tableSize;
+
+    /** where the records of the tail start and where the last whole one ends. */
+    private final int baseEnd;
+
+    private final int tailEnd;
+
+    private final List<Record> tail = new ArrayList<>();
+
+    /** one commit and its message. */
+    record Record(String id, String message) { }
+
+    /** the index held in BUFFER, laid out as in the index file. */
+    MessageIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new GitletException("Corrupt message-index file.");
+        }
+        this.baseCount = buffer.getInt(8);
+        this.tokenCount = buffer.getInt(12);
+        this.tableSize = buffer.getInt(16);
+        this.baseEnd = buffer.getInt(20);
+        int pos = baseEnd;
+        // a record cut short by an interrupted append is ignored.
+        while (pos + RECORD_HEADER_SIZE <= buffer.capacity()
+                && pos + RECORD_HEADER_SIZE + buffer.getInt(pos + PackIndex.RAW_ID_LENGTH) <= buffer.capacity()) {
+            tail.add(recordAt(pos));
+            pos += RECORD_HEADER_SIZE + buffer.getInt(pos + PackIndex.RAW_ID_LENGTH);
+        }
+        this.tailEnd = pos;
+    }
+
+    /** return the message index of this repository, or null if it has none. */
+    public static MessageIndex read() {
+        if (!INDEX_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(INDEX_FILE.toPath(), StandardOpenOption.READ)) {
+            return new MessageIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return the message index, building it from the commits first if it is missing. */
+    public static MessageIndex readOrWrite() {
+        if (!INDEX_FILE.isFile()) {
+            write();
+        }
+        return read();
+    }
+
+    /** return the ids of the commits whose message is MESSAGE, in order. */
+    public List<String> exact(String message) {
+        TreeSet<String> result = new TreeSet<>();
+        int mask = tableSize - 1;
+        for (int slot = message.hashCode() & mask; ; slot = (slot + 1) & mask) {
+            int entry = buffer.getInt(tableStart() + slot * 4);
+            if (entry == 0) {
+                break;
+            }
+            Record record = recordAt(recordOffset(entry - 1));
+            if (record.message().equals(message)) {
+                result.add(record.id());
+            }
+        }
+        for (Record record : tail) {
+            if (record.message().equals(message)) {
+                result.add(record.id());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** return the ids of the commits whose message contains TEXT, in order.
+     *  the words of TEXT that cannot be cut off by its ends must be tokens of the message,
+     *  so only the base records holding all of them are read. */
+    public List<String> containing(String text) {
+        TreeSet<String> result = new TreeSet<>();
+        int[] candidates = null;
+        for (String token : tokens(text, true)) {
+            int[] postings = postings(token);
+            candidates = candidates == null ? postings : intersect(candidates, postings);
+        }
+        if (candidates == null) {
+            for (int i = 0; i < baseCount; i++) {
+                addIfContains(recordAt(recordOffset(i)), text, result);
+            }
+        } else {
+            for (int i : candidates) {
+                addIfContains(recordAt(recordOffset(i)), text, result);
+            }
+        }
+        for (Record record : tail) {
+            addIfContains(record, text, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** return the ids of the commits with a message in which PATTERN is found, in order. */
+    public List<String> matching(Pattern pattern) {
+        TreeSet<String> result = new TreeSet<>();
+        for (Record record : records()) {
+            if (pattern.matcher(record.message()).find()) {
+                result.add(record.id());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static void addIfContains(Record record, String text, TreeSet<String> result) {
+        if (record.message().contains(text)) {
+            result.add(record.id());
+        }
+    }
+
+    /** return every record, the base then the tail. */
+    private List<Record> records() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < baseCount; i++) {
+            records.add(recordAt(recordOffset(i)));
+        }
+        records.addAll(tail);
+        return records;
+    }
+
+    /** return the base records whose message holds TOKEN, by number, or none. */
+    private int[] postings(String token) {
+        byte[] wanted = token.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = tokenCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = buffer.getInt(tokenOffsetsStart() + mid * 4);
+            byte[] name = new byte[buffer.getShort(start) & 0xffff];
+            buffer.get(start + 2, name);
+            int cmp = Arrays.compareUnsigned(name, wanted);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                int countAt = start + 2 + name.length;
+                int[] result = new int[buffer.getInt(countAt)];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = buffer.getInt(countAt + 4 + i * 4);
+                }
+                return result;
+            }
+        }
+        return new int[0];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** return the runs of letters and digits in TEXT, leaving out those touching either end
+     *  if WHOLEONLY, as they may be parts of longer runs in a text that contains TEXT. */
+    static List<String> tokens(String text, boolean wholeOnly) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if ((!wholeOnly || (start > 0 && i < text.length())) && i - start <= MAX_TOKEN_LENGTH) {
+                    result.add(text.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    private Record recordAt(int pos) {
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        buffer.get(pos, raw);
+        byte[] message = new byte[buffer.getInt(pos + PackIndex.RAW_ID_LENGTH)];
+        buffer.get(pos + RECORD_HEADER_SIZE, message);
+        return new Record(PackIndex.toHex(raw), new String(message, StandardCharsets.UTF_8));
+    }
+
+    private int recordOffset(int i) {
+        return buffer.getInt(HEADER_SIZE + i * 4);
+    }
+
+    private int tableStart() {
+        return HEADER_SIZE + baseCount * 4;
+    }
+
+    private int tokenOffsetsStart() {
+        return tableStart() + tableSize * 4;
+    }
+
+    /** rebuild the index from every commit in the repository. */
+    public static void write() {
+        List<Record> records = new ArrayList<>();
+        try (CommitScan scan = CommitScan.fromConfig()) {
+            scan.forEach(scan.ids(false), c -> records.add(new Record(c.getId(), c.getMessage())));
+        }
+        write(records);
+    }
+
+    /** add the message of the saved commit C, merging the tail into the base once it is long enough.
+     *  nothing is added if the repository has no index; find builds it when it is needed. */
+    public static void append(Commit c) {
+        MessageIndex index = read();
+        if (index == null) {
+            return;
+        }
+        Record added = new Record(c.getId(), c.getMessage());
+        if (index.tail.size() >= TAIL_LIMIT) {
+            List<Record> records = index.records();
+            records.add(added);
+            write(records);
+            return;
+        }
+        ByteBuffer record = tailRecord(added);
+        try (FileChannel out = FileChannel.open(INDEX_FILE.toPath(), StandardOpenOption.WRITE)) {
+            out.truncate(index.tailEnd);
+            out.write(record, index.tailEnd);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return the bytes that append RECORD to the tail of an index. */
+    static ByteBuffer tailRecord(Record record) {
+        byte[] message = record.message().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(RECORD_HEADER_SIZE + message.length);
+        out.put(PackIndex.toRaw(record.id())).putInt(message.length).put(message);
+        return out.flip();
+    }
+
+    /** write RECORDS as the base of a new index file, replacing the old one. */
+    private static void write(List<Record> records) {
+        ByteBuffer out = encode(records);
+        File tmp = Utils.join(GITLET_DIR, "message-index.tmp");
+        Utils.writeContents(tmp, (Object) out.array());
+        try {
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return an index file holding RECORDS as its base. */
+    static ByteBuffer encode(List<Record> records) {
+        TreeMap<String, Record> byId = new TreeMap<>();
+        for (Record record : records) {
+            byId.put(record.id(), record);
+        }
+        List<Record> base = new ArrayList<>(byId.values());
+        int n = base.size();
+        int tableSize = Integer.highestOneBit(Math.max(1, n) * 2) * 2;
+        int[] table = new int[tableSize];
+        TreeMap<String, List<Integer>> tokens = new TreeMap<>(MessageIndex::compareUtf8);
+        for (int i = 0; i < n; i++) {
+            String message = base.get(i).message();
+            int slot = message.hashCode() & (tableSize - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = i + 1;
+            for (String token : tokens(message, false)) {
+                List<Integer> postings = tokens.computeIfAbsent(token, k -> new ArrayList<>());
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != i) {
+                    postings.add(i);
+                }
+            }
+        }
+        int dataStart = HEADER_SIZE + (n + tableSize + tokens.size()) * 4;
+        int[] tokenOffsets = new int[tokens.size()];
+        int[] recordOffsets = new int[n];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(data)) {
+            int t = 0;
+            for (Map.Entry<String, List<Integer>> token : tokens.entrySet()) {
+                tokenOffsets[t++] = dataStart + out.size();
+                byte[] name = token.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(token.getValue().size());
+                for (int i : token.getValue()) {
+                    out.writeInt(i);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                recordOffsets[i] = dataStart + out.size();
+                byte[] message = base.get(i).message().getBytes(StandardCharsets.UTF_8);
+                out.write(PackIndex.toRaw(base.get(i).id()));
+                out.writeInt(message.length);
+                out.write(message);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        ByteBuffer out = ByteBuffer.allocate(dataStart + data.size());
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(tokens.size()).putInt(tableSize)
+                .putInt(dataStart + data.size());
+        for (int offset : recordOffsets) {
+            out.putInt(offset);
+        }
+        for (int entry : table) {
+            out.putInt(entry);
+        }
+        for (int offset : tokenOffsets) {
+            out.putInt(offset);
+        }
+        out.put(data.toByteArray());
+        return out;
+    }
+
+    /** tokens are kept in the order of their UTF-8 bytes, which is how they are searched. */
+    private static int compareUtf8(String a, String b) {
+        return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
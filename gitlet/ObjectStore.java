@@ -0,0 +1,643 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static gitlet.Repository.*;
+
+/** Storage for commit, tree and blob objects, keyed by the kind directory (COMMIT_DIR, TREES_DIR or BLOBS_DIR) and id.
+ *  New objects are written loose, one file per object, in a subdirectory of the kind directory named
+ *  by the first two hex digits of the id, so no directory holds more than a fraction of the objects.
+ *  Repositories from before that keep their loose objects directly in the kind directory until
+ *  `gitlet migrate` moves them; both places are read.
+ *  `gitlet repack` moves loose objects, and the objects of any earlier packs, into one pack file per kind
+ *  in PACK_DIR named KIND-HASH.pack, next to a sorted index KIND-HASH.idx (see PackIndex).
+ *  A pack only counts once its index exists, so an interrupted repack leaves the loose objects in place.
+ *  Repacked blobs may be stored as deltas against an earlier version of the same file.
+ *  The pack indexes are listed and mapped once per command by the Holder running it, and again after a repack;
+ *  one-shot commands run on the main thread, which maps them for each lookup that misses the loose objects.
+ *  @author Haichao
+ */
+public class ObjectStore {
+
+    static final int PACK_MAGIC = 0x4750414b;
+
+    static final int PACK_VERSION = 1;
+
+    private static final int PACK_HEADER_SIZE = 12;
+
+    private static final int DEFAULT_DELTA_DEPTH = 10;
+
+    /** blobs larger than this are never stored as or used as delta bases, as both are rebuilt in memory. */
+    private static final long MAX_DELTA_SIZE = 16L * 1024 * 1024;
+
+    /** a thread running commands, which keeps the packs it mapped until they change. */
+    public interface Holder {
+        /** return the packs of a kind mapped by this thread. */
+        Reader reader(File kindDir);
+
+        /** drop the mapped packs, as packs were added or removed. */
+        void forgetPacks();
+    }
+
+    public static boolean contains(File kindDir, String id) {
+        return findLoose(kindDir, id) != null || inPack(kindDir, id);
+    }
+
+    /** where the stored bytes of an object live: LENGTH bytes at OFFSET in FILE,
+     *  which is either the loose object file or a pack. */
+    public record Location(File file, long offset, long length) { }
+
+    /** return the location of object ID, or null if no such object exists. */
+    public static Location locate(File kindDir, String id) {
+        File loose = findLoose(kindDir, id);
+        if (loose != null) {
+            return new Location(loose, 0, loose.length());
+        }
+        return packs(kindDir).locate(id);
+    }
+
+    /** return the stored bytes of object ID, or null if no such object exists.
+     *  the packs kept mapped by the thread running the command are read without mapping them again. */
+    public static byte[] read(File kindDir, String id) {
+        return Thread.currentThread() instanceof Holder holder ? holder.reader(kindDir).read(id)
+                : readLocated(kindDir, id);
+    }
+
+    /** return the packs of a kind: those kept by the thread running the command, or else newly mapped. */
+    private static Reader packs(File kindDir) {
+        return Thread.currentThread() instanceof Holder holder ? holder.reader(kindDir) : new Reader(kindDir);
+    }
+
+    /** make the thread running the command list and map the packs again, after adding one. */
+    private static void forgetPacks() {
+        if (Thread.currentThread() instanceof Holder holder) {
+            holder.forgetPacks();
+        }
+    }
+
+    private static byte[] readLocated(File kindDir, String id) {
+        Location location = locate(kindDir, id);
+        if (location == null) {
+            return null;
+        }
+        if (location.offset() == 0) {
+            return Utils.readContents(location.file());
+        }
+        try (FileChannel channel = FileChannel.open(location.file().toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    location.offset(), location.length());
+            byte[] content = new byte[(int) location.length()];
+            mapped.get(content);
+            return content;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Reads many objects of one kind with the pack indexes listed and mapped once, and each pack
+     *  mapped on its first read, rather than listing and mapping them again for each object.
+     *  Only absolute reads are made on the shared buffers, so one reader can be used from several threads. */
+    public static class Reader {
+
+        private final File kindDir;
+
+        private final List<PackIndex> indexes = new ArrayList<>();
+
+        private final List<File> packFiles = new ArrayList<>();
+
+        /** the mapped pack of each index, null until it is first read. */
+        private final ByteBuffer[] packs;
+
+        public Reader(File kindDir) {
+            this.kindDir = kindDir;
+            for (File idx : packIndexes(kindDir)) {
+                indexes.add(new PackIndex(idx));
+                packFiles.add(packFor(idx));
+            }
+            packs = new ByteBuffer[indexes.size()];
+        }
+
+        /** return the location of object ID in a pack, or null if no pack holds it. */
+        public Location locate(String id) {
+            for (int i = 0; i < indexes.size(); i++) {
+                int pos = indexes.get(i).find(id);
+                if (pos >= 0) {
+                    return new Location(packFiles.get(i), indexes.get(i).offsetAt(pos), indexes.get(i).lengthAt(pos));
+                }
+            }
+            return null;
+        }
+
+        /** return up to LIMIT packed ids that start with the hex PREFIX, in order. */
+        public List<String> matches(String prefix, int limit) {
+            TreeSet<String> result = new TreeSet<>();
+            for (PackIndex index : indexes) {
+                result.addAll(index.matches(prefix, limit));
+            }
+            return new ArrayList<>(result).subList(0, Math.min(limit, result.size()));
+        }
+
+        /** return the stored bytes of object ID, or null if no such object exists.
+         *  packs are searched before loose objects here, as either holds the same bytes. */
+        public byte[] read(String id) {
+            for (int i = 0; i < indexes.size(); i++) {
+                int pos = indexes.get(i).find(id);
+                if (pos < 0) {
+                    continue;
+                }
+                ByteBuffer pack = pack(i);
+                if (pack == null) {
+                    return readLocated(kindDir, id);
+                }
+                byte[] content = new byte[(int) indexes.get(i).lengthAt(pos)];
+                pack.get((int) indexes.get(i).offsetAt(pos), content);
+                return content;
+            }
+            File loose = findLoose(kindDir, id);
+            return loose == null ? null : Utils.readContents(loose);
+        }
+
+        /** return pack I mapped in full, or null if it is too large to map at once. */
+        private synchronized ByteBuffer pack(int i) {
+            if (packs[i] == null) {
+                try (FileChannel channel = FileChannel.open(packFiles.get(i).toPath(), StandardOpenOption.READ)) {
+                    if (channel.size() > Integer.MAX_VALUE) {
+                        return null;
+                    }
+                    packs[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+            }
+            return packs[i];
+        }
+    }
+
+    /** return the stored bytes of object ID as a stream, or null if no such object exists. */
+    public static InputStream open(File kindDir, String id) {
+        Location location = locate(kindDir, id);
+        if (location == null) {
+            return null;
+        }
+        try {
+            if (location.offset() == 0) {
+                return Files.newInputStream(location.file().toPath());
+            }
+            try (FileChannel channel = FileChannel.open(location.file().toPath(), StandardOpenOption.READ)) {
+                return new BufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY,
+                        location.offset(), location.length()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return a new empty file in KINDDIR to build an object in before moveIn. */
+    public static File tempFile(File kindDir) {
+        try {
+            return Files.createTempFile(kindDir.toPath(), "tmp-", "").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** make the finished temporary file TMP the loose object ID, or drop it if ID already exists. */
+    public static void moveIn(File kindDir, String id, File tmp) {
+        if (contains(kindDir, id)) {
+            tmp.delete();
+            return;
+        }
+        File loose = looseFile(kindDir, id);
+        loose.getParentFile().mkdir();
+        try {
+            Files.move(tmp.toPath(), loose.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** store CONTENT as a loose object, unless an object with ID already exists. */
+    public static void write(File kindDir, String id, byte[] content) {
+        if (!contains(kindDir, id)) {
+            File loose = looseFile(kindDir, id);
+            loose.getParentFile().mkdir();
+            Utils.writeContents(loose, (Object) content);
+        }
+    }
+
+    /** return up to LIMIT ids of loose and packed objects of a kind that start with the hex PREFIX, in order.
+     *  packs are searched through their sorted index, so only loose objects are listed. */
+    public static List<String> matches(File kindDir, String prefix, int limit) {
+        TreeSet<String> result = new TreeSet<>();
+        // a prefix of two or more digits names the only fan-out directory that can hold matches.
+        String fanout = prefix.length() >= 2 ? prefix.substring(0, 2) : null;
+        forEachLoose(kindDir, fanout, id -> {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        });
+        result.addAll(packs(kindDir).matches(prefix, limit));
+        return new ArrayList<>(result).subList(0, Math.min(limit, result.size()));
+    }
+
+    /** return the ids of all loose and packed objects of a kind, in lexicographic order.
+     *  this holds every id in memory; forEachId visits them without doing so. */
+    public static List<String> ids(File kindDir) {
+        TreeSet<String> result = new TreeSet<>();
+        forEachId(kindDir, result::add);
+        return new ArrayList<>(result);
+    }
+
+    /** call ACTION once with the id of every loose and packed object of a kind, in no particular order.
+     *  directories are read entry by entry and pack indexes are mapped, so nothing is collected first. */
+    public static void forEachId(File kindDir, Consumer<String> action) {
+        List<PackIndex> packs = packs(kindDir).indexes;
+        forEachLoose(kindDir, null, id -> {
+            for (PackIndex pack : packs) {
+                if (pack.find(id) >= 0) {
+                    return;
+                }
+            }
+            action.accept(id);
+        });
+        for (PackIndex pack : packs) {
+            for (int i = 0; i < pack.size(); i++) {
+                action.accept(pack.idAt(i));
+            }
+        }
+    }
+
+    /** move the loose objects that older repositories keep directly in the kind directories
+     *  into their fan-out directories, and return how many were moved. safe to run again if interrupted. */
+    public static int migrate() {
+        return migrate(COMMIT_DIR, TREES_DIR, BLOBS_DIR);
+    }
+
+    /** as migrate(), for the objects in KINDDIRS. */
+    static int migrate(File... kindDirs) {
+        int moved = 0;
+        for (File kindDir : kindDirs) {
+            List<String> names = Utils.plainFilenamesIn(kindDir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (name.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                File flat = Utils.join(kindDir, name);
+                File loose = looseFile(kindDir, name);
+                loose.getParentFile().mkdir();
+                try {
+                    if (loose.isFile()) {
+                        flat.delete();
+                    } else {
+                        Files.move(flat.toPath(), loose.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+                moved += 1;
+            }
+        }
+        return moved;
+    }
+
+    /** move all loose commits, trees and blobs, and the objects of the existing packs, into one new pack per kind,
+     *  so lookups never search more than one pack of a kind.
+     *  blobs that are a later version of a file may be stored as deltas, see chooseDeltas. */
+    public static void repack() {
+        PACK_DIR.mkdir();
+        repack(COMMIT_DIR, new HashMap<>());
+        repack(TREES_DIR, new HashMap<>());
+        List<String> blobs = new ArrayList<>();
+        for (String id : looseIds(BLOBS_DIR)) {
+            if (!inPack(BLOBS_DIR, id)) {
+                blobs.add(id);
+            }
+        }
+        repack(BLOBS_DIR, chooseDeltas(new HashSet<>(blobs)));
+    }
+
+    /** pack the loose objects of a kind together with the objects in its existing packs into one new pack,
+     *  storing RECORDS in place of the loose bytes where given, then drop the loose objects and the old packs.
+     *  packed bytes are copied as they are, so deltas chosen by an earlier repack are kept. */
+    private static void repack(File kindDir, Map<String, byte[]> records) {
+        Reader old = packs(kindDir);
+        List<String> loose = looseIds(kindDir);
+        SortedMap<String, Location> sources = new TreeMap<>();
+        for (String id : loose) {
+            File f = findLoose(kindDir, id);
+            sources.put(id, new Location(f, 0, f.length()));
+        }
+        for (int i = 0; i < old.indexes.size(); i++) {
+            PackIndex index = old.indexes.get(i);
+            for (int j = 0; j < index.size(); j++) {
+                sources.put(index.idAt(j), new Location(old.packFiles.get(i), index.offsetAt(j), index.lengthAt(j)));
+            }
+        }
+        File idx = null;
+        if (old.indexes.size() != 1 || old.indexes.get(0).size() != sources.size()) {
+            idx = sources.isEmpty() ? null : writePack(kindDir, sources, records);
+        }
+        for (String id : loose) {
+            File f = findLoose(kindDir, id);
+            f.delete();
+            // drops the fan-out directory once it is empty.
+            f.getParentFile().delete();
+        }
+        if (idx == null) {
+            return;
+        }
+        for (File pack : old.packFiles) {
+            File oldIdx = indexFor(pack);
+            if (!oldIdx.equals(idx)) {
+                // the index goes first, so the pack stops counting before its bytes do.
+                oldIdx.delete();
+                pack.delete();
+            }
+        }
+    }
+
+    /** pick delta bases for the loose blobs in CANDIDATES and return their delta records.
+     *  every version of a file in history is a candidate base for the next version of the same file,
+     *  as long as the chain stays within pack.deltaDepth and the delta is under half the full size. */
+    private static Map<String, byte[]> chooseDeltas(Set<String> candidates) {
+        Map<String, byte[]> records = new HashMap<>();
+        int maxDepth = Math.min(Config.getInt(Config.DELTA_DEPTH, DEFAULT_DELTA_DEPTH), Blob.MAX_DELTA_DEPTH);
+        if (maxDepth <= 0 || candidates.isEmpty()) {
+            return records;
+        }
+        // the versions of every file name, in the commits made at the same time as well.
+        Map<String, List<Version>> versions = new HashMap<>();
+        for (String commitId : ids(COMMIT_DIR)) {
+            Commit c = HelperMethods.getCommit(commitId);
+            long time = c.getTimeStamp().getTime();
+            for (Map.Entry<String, String> file : c.getTrackedFiles().entrySet()) {
+                versions.computeIfAbsent(file.getKey(), k -> new ArrayList<>())
+                        .add(new Version(time, file.getValue()));
+            }
+        }
+        Map<String, String> bases = new HashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        DeltaCache cache = new DeltaCache();
+        for (List<Version> history : versions.values()) {
+            // oldest first; the sort is stable and commits are listed in id order, so ties break the same way every time.
+            history.sort(Comparator.comparingLong(Version::time));
+            String previous = null;
+            for (Version version : history) {
+                String target = version.blobId();
+                String base = previous;
+                previous = target;
+                if (base == null || base.equals(target) || !candidates.contains(target)
+                        || bases.containsKey(target) || reaches(bases, base, target)) {
+                    continue;
+                }
+                int depth = depths.containsKey(base) ? depths.get(base) : Blob.deltaDepth(base);
+                File loose = findLoose(BLOBS_DIR, target);
+                if (depth + 1 > maxDepth || loose.length() > MAX_DELTA_SIZE
+                        || Blob.encoding(base) == Blob.CHUNKED || Blob.encoding(target) == Blob.CHUNKED) {
+                    continue;
+                }
+                byte[] baseContent = Blob.read(base, cache);
+                if (baseContent == null || baseContent.length > MAX_DELTA_SIZE) {
+                    continue;
+                }
+                byte[] record = Blob.deltaRecord(base, depth + 1, baseContent, Blob.read(target, cache));
+                if (record.length < loose.length() / 2) {
+                    records.put(target, record);
+                    bases.put(target, base);
+                    depths.put(target, depth + 1);
+                }
+            }
+        }
+        return records;
+    }
+
+    /** blob BLOBID of a file in a commit made at TIME. */
+    private record Version(long time, String blobId) { }
+
+    /** return true if following the chosen BASES from FROM leads to TARGET. */
+    private static boolean reaches(Map<String, String> bases, String from, String target) {
+        for (String id = from; id != null; id = bases.get(id)) {
+            if (id.equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** write the objects in SOURCES, read from their loose file or pack, into a new pack and index,
+     *  taking the bytes of an object from RECORDS instead if present, and return the index.
+     *  offsets and lengths are longs throughout, so a pack may grow past 2 GB. */
+    private static File writePack(File kindDir, SortedMap<String, Location> sources, Map<String, byte[]> records) {
+        int n = sources.size();
+        String[] idArray = sources.keySet().toArray(new String[0]);
+        long[] offsets = new long[n];
+        long[] lengths = new long[n];
+        String name = kindDir.getName() + "-" + Utils.sha1(String.join("", idArray));
+        File packTmp = Utils.join(PACK_DIR, name + ".pack.tmp");
+        File idxTmp = Utils.join(PACK_DIR, name + ".idx.tmp");
+        Map<File, FileChannel> packChannels = new HashMap<>();
+        try (FileChannel out = FileChannel.open(packTmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            header.putInt(PACK_MAGIC).putInt(PACK_VERSION).putInt(n).flip();
+            out.write(header);
+            long position = PACK_HEADER_SIZE;
+            for (int i = 0; i < n; i++) {
+                byte[] record = records.get(idArray[i]);
+                offsets[i] = position;
+                if (record != null) {
+                    out.write(ByteBuffer.wrap(record));
+                    lengths[i] = record.length;
+                    position += record.length;
+                    continue;
+                }
+                Location from = sources.get(idArray[i]);
+                // loose objects start at offset 0; the packs they are merged from stay open until the end.
+                boolean loose = from.offset() == 0;
+                FileChannel in = loose ? null : packChannels.get(from.file());
+                if (in == null) {
+                    in = FileChannel.open(from.file().toPath(), StandardOpenOption.READ);
+                    if (!loose) {
+                        packChannels.put(from.file(), in);
+                    }
+                }
+                try {
+                    long copied = 0;
+                    while (copied < from.length()) {
+                        copied += in.transferTo(from.offset() + copied, from.length() - copied, out);
+                    }
+                } finally {
+                    if (loose) {
+                        in.close();
+                    }
+                }
+                lengths[i] = from.length();
+                position += from.length();
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            for (FileChannel in : packChannels.values()) {
+                try {
+                    in.close();
+                } catch (IOException excp) {
+                    // only read from, so nothing is lost.
+                }
+            }
+        }
+        File idx = Utils.join(PACK_DIR, name + ".idx");
+        PackIndex.write(idxTmp, idArray, offsets, lengths);
+        try {
+            Files.move(packTmp.toPath(), Utils.join(PACK_DIR, name + ".pack").toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxTmp.toPath(), idx.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        forgetPacks();
+        return idx;
+    }
+
+    private static boolean inPack(File kindDir, String id) {
+        return packs(kindDir).locate(id) != null;
+    }
+
+    /** the file that loose object ID is written to. */
+    static File looseFile(File kindDir, String id) {
+        return Utils.join(kindDir, id.substring(0, 2), id.substring(2));
+    }
+
+    /** return the file of loose object ID, in its fan-out directory or directly in KINDDIR, or null if none. */
+    private static File findLoose(File kindDir, String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return null;
+        }
+        File loose = looseFile(kindDir, id);
+        if (loose.isFile()) {
+            return loose;
+        }
+        File flat = Utils.join(kindDir, id);
+        return flat.isFile() ? flat : null;
+    }
+
+    private static List<String> looseIds(File kindDir) {
+        List<String> result = new ArrayList<>();
+        forEachLoose(kindDir, null, result::add);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** call ACTION with the id of every loose object of a kind, only looking in fan-out directory
+     *  FANOUT if it is not null. files that are not objects, such as unfinished temporary files, are skipped. */
+    private static void forEachLoose(File kindDir, String fanout, Consumer<String> action) {
+        if (!kindDir.isDirectory()) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(kindDir.toPath())) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.length() == Utils.UID_LENGTH && PackIndex.isHex(name)
+                        && (fanout == null || name.startsWith(fanout))) {
+                    action.accept(name);
+                } else if (name.length() == 2 && PackIndex.isHex(name)
+                        && (fanout == null || name.equals(fanout)) && Files.isDirectory(entry)) {
+                    try (DirectoryStream<Path> objects = Files.newDirectoryStream(entry)) {
+                        for (Path object : objects) {
+                            String rest = object.getFileName().toString();
+                            if (rest.length() == Utils.UID_LENGTH - 2 && PackIndex.isHex(rest)) {
+                                action.accept(name + rest);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** return the index files of all complete packs of a kind. */
+    private static List<File> packIndexes(File kindDir) {
+        List<File> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(PACK_DIR);
+        if (names == null) {
+            return result;
+        }
+        String prefix = kindDir.getName() + "-";
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(".idx")) {
+                result.add(Utils.join(PACK_DIR, name));
+            }
+        }
+        return result;
+    }
+
+    /** an input stream over a mapped region of a pack file. */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static File indexFor(File pack) {
+        String name = pack.getName();
+        return Utils.join(PACK_DIR, name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    private static File packFor(File idx) {
+        String name = idx.getName();
+        return Utils.join(PACK_DIR, name.substring(0, name.length() - ".idx".length()) + ".pack");
+    }
+}
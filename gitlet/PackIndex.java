@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A read-only view of a pack index file, memory mapped in full.
+ *  Layout (all integers big-endian):
+ *      magic "GIDX", version, object count,
+ *      fanout table: 256 ints, entry b is the number of ids whose first byte is <= b,
+ *      ids: count raw 20-byte ids in ascending order,
+ *      offsets: count longs, position of each object in the pack file,
+ *      lengths: count longs, size of each object in the pack file.
+ *  Lookups narrow the search range with the fanout table and then binary search the ids.
+ *  @author Haichao
+ */
+public class PackIndex {
+
+    static final int MAGIC = 0x47494458;
+
+    static final int VERSION = 1;
+
+    static final int RAW_ID_LENGTH = 20;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int FANOUT_SIZE = 256 * 4;
+
+    private final MappedByteBuffer buffer;
+
+    private final int count;
+
+    public PackIndex(File idxFile) {
+        try (FileChannel channel = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new GitletException("Corrupt pack index " + idxFile.getName() + ".");
+        }
+        count = buffer.getInt(8);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** return the position of ID in this index, or -1 if it is not present or not a full id. */
+    public int find(String id) {
+        if (id.length() != 2 * RAW_ID_LENGTH) {
+            return -1;
+        }
+        byte[] raw = toRaw(id);
+        int first = raw[0] & 0xff;
+        int low = first == 0 ? 0 : fanout(first - 1);
+        int high = fanout(first) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** return up to LIMIT ids in this index that start with the hex PREFIX, in order. */
+    public List<String> matches(String prefix, int limit) {
+        return matches(buffer, HEADER_SIZE, idsStart(), RAW_ID_LENGTH, count, prefix, limit);
+    }
+
+    public String idAt(int pos) {
+        byte[] raw = new byte[RAW_ID_LENGTH];
+        buffer.get(idsStart() + pos * RAW_ID_LENGTH, raw);
+        return toHex(raw);
+    }
+
+    public long offsetAt(int pos) {
+        return buffer.getLong(idsStart() + count * RAW_ID_LENGTH + pos * 8);
+    }
+
+    public long lengthAt(int pos) {
+        return buffer.getLong(idsStart() + count * RAW_ID_LENGTH + count * 8 + pos * 8);
+    }
+
+    private int fanout(int b) {
+        return buffer.getInt(HEADER_SIZE + b * 4);
+    }
+
+    private int idsStart() {
+        return HEADER_SIZE + FANOUT_SIZE;
+    }
+
+    private int compareId(int pos, byte[] raw) {
+        return compare(buffer, idsStart() + pos * RAW_ID_LENGTH, raw);
+    }
+
+    /** write an index for the sorted IDS whose objects sit at OFFSETS with LENGTHS in a pack file. */
+    public static void write(File idxFile, String[] ids, long[] offsets, long[] lengths) {
+        int n = ids.length;
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + FANOUT_SIZE + n * (RAW_ID_LENGTH + 16));
+        out.putInt(MAGIC).putInt(VERSION).putInt(n);
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b++) {
+            total += fanout[b];
+            out.putInt(total);
+        }
+        for (String id : ids) {
+            out.put(toRaw(id));
+        }
+        for (long offset : offsets) {
+            out.putLong(offset);
+        }
+        for (long length : lengths) {
+            out.putLong(length);
+        }
+        Utils.writeContents(idxFile, (Object) out.array());
+    }
+
+    /** return up to LIMIT ids that start with the hex PREFIX, in order, among the COUNT ascending raw ids
+     *  in BUFFER that start at IDSSTART and are STRIDE bytes apart, indexed by the fanout table at FANOUTSTART.
+     *  the fanout table narrows the range once the prefix covers a whole byte; a binary search
+     *  then finds the first id not below the prefix. */
+    static List<String> matches(ByteBuffer buffer, int fanoutStart, int idsStart, int stride, int count,
+                                String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        if (!isHex(prefix) || prefix.length() > 2 * RAW_ID_LENGTH) {
+            return result;
+        }
+        byte[] raw = toRaw((prefix + "0".repeat(2 * RAW_ID_LENGTH)).substring(0, 2 * RAW_ID_LENGTH));
+        int low = 0;
+        int high = count;
+        if (prefix.length() >= 2) {
+            int first = raw[0] & 0xff;
+            low = first == 0 ? 0 : buffer.getInt(fanoutStart + (first - 1) * 4);
+            high = buffer.getInt(fanoutStart + first * 4);
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(buffer, idsStart + mid * stride, raw) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        byte[] id = new byte[RAW_ID_LENGTH];
+        for (int pos = low; pos < count && result.size() < limit; pos++) {
+            buffer.get(idsStart + pos * stride, id);
+            String hex = toHex(id);
+            if (!hex.startsWith(prefix)) {
+                break;
+            }
+            result.add(hex);
+        }
+        return result;
+    }
+
+    /** compare the raw id at START in BUFFER with RAW. */
+    static int compare(ByteBuffer buffer, int start, byte[] raw) {
+        for (int i = 0; i < RAW_ID_LENGTH; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xff, raw[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0 || Character.isUpperCase(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** convert a 40 character hex id to its 20 raw bytes. */
+    static byte[] toRaw(String id) {
+        byte[] raw = new byte[RAW_ID_LENGTH];
+        for (int i = 0; i < RAW_ID_LENGTH; i++) {
+            raw[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4 | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return raw;
+    }
+
+    static String toHex(byte[] raw) {
+        StringBuilder hex = new StringBuilder(raw.length * 2);
+        for (byte b : raw) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
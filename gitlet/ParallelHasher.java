@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/** Hashes or stores many working files at once on a work-stealing pool.
+ *  The files are split in halves until a task holds at most BATCH_SIZE of them, so idle threads
+ *  steal the remaining halves of busy ones. Each file is charged the memory its work holds:
+ *  a read buffer of at most BUFFER_SIZE bytes to hash it, or Blob.footprint to store it.
+ *  A file only starts once its charge fits in the in-flight budget, which keeps memory flat
+ *  however many files or threads there are.
+ *  @author Haichao
+ */
+public class ParallelHasher implements AutoCloseable {
+
+    /** default budget for the buffers of all files being hashed or stored at the same time. */
+    public static final int DEFAULT_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+
+    /** largest read buffer used to hash one file. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final int BATCH_SIZE = 16;
+
+    private final int threads;
+
+    /** started by the first call with more than BATCH_SIZE files, so small commands start no threads. */
+    private ForkJoinPool pool;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlight;
+
+    /** a hasher running on THREADS threads with at most MAXINFLIGHT bytes of buffers. */
+    public ParallelHasher(int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < BUFFER_SIZE) {
+            throw new IllegalArgumentException("Bad hasher size: " + threads + " threads, " + maxInFlight + " bytes");
+        }
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /** a hasher using the thread count in the repository config, or one thread per core. */
+    public static ParallelHasher fromConfig() {
+        int threads = Config.getInt(Config.HASH_THREADS, 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new ParallelHasher(threads, DEFAULT_IN_FLIGHT_BYTES);
+    }
+
+    /** return the blob ids of FILES, keyed like FILES. */
+    public Map<String, String> hash(Map<String, File> files) {
+        return run(files, ParallelHasher::readBuffer, f -> HelperMethods.sha1Helper(f, new byte[readBuffer(f)]));
+    }
+
+    /** store FILES as blobs as set by OPTIONS, and return their ids keyed like FILES. */
+    public Map<String, String> store(Map<String, File> files, Blob.StoreOptions options) {
+        return run(files, f -> Blob.footprint(f, options), f -> Blob.store(f, options));
+    }
+
+    /** apply ACTION to each of FILES on the pool, counting COST bytes per file against the budget,
+     *  or the whole budget for a file that costs more. */
+    Map<String, String> run(Map<String, File> files, ToIntFunction<File> cost, Function<File, String> action) {
+        List<String> names = new ArrayList<>(files.keySet());
+        File[] targets = new File[names.size()];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = files.get(names.get(i));
+        }
+        String[] ids = new String[targets.length];
+        FileTask task = new FileTask(targets, ids, 0, targets.length, cost, action);
+        if (targets.length <= BATCH_SIZE) {
+            task.compute();
+        } else {
+            if (pool == null) {
+                pool = Trace.pool(threads);
+            }
+            pool.invoke(task);
+        }
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            result.put(names.get(i), ids[i]);
+        }
+        return result;
+    }
+
+    /** return the size of the buffer F is hashed through. */
+    private static int readBuffer(File f) {
+        return (int) Math.max(1, Math.min(f.length(), BUFFER_SIZE));
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /** applies ACTION to TARGETS[FROM..TO), putting the results in IDS[FROM..TO). */
+    private class FileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File[] targets;
+
+        private final String[] ids;
+
+        private final int from;
+
+        private final int to;
+
+        private final ToIntFunction<File> cost;
+
+        private final Function<File, String> action;
+
+        FileTask(File[] targets, String[] ids, int from, int to, ToIntFunction<File> cost,
+                 Function<File, String> action) {
+            this.targets = targets;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FileTask(targets, ids, from, mid, cost, action),
+                        new FileTask(targets, ids, mid, to, cost, action));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int size = Math.max(1, Math.min(cost.applyAsInt(targets[i]), maxInFlight));
+                inFlight.acquireUninterruptibly(size);
+                try {
+                    ids[i] = action.apply(targets[i]);
+                } finally {
+                    inFlight.release(size);
+                }
+            }
+        }
+    }
+}
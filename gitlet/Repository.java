@@ -1,9 +1,19 @@
 package gitlet;
 
-import com.sun.source.tree.Tree;
-
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.HelperMethods.getBranchInHead;
 import static gitlet.Utils.*;
@@ -25,6 +35,10 @@ public class Repository {
 
     public static final File BLOBS_DIR = join(GITLET_DIR, "blobs");
 
+    public static final File TREES_DIR = join(GITLET_DIR, "trees");
+
+    public static final File PACK_DIR = join(GITLET_DIR, "packs");
+
     public static final File STAGE_DIR = join(GITLET_DIR, "stage");
 
     public static final File ADDITION_STAGE = join(STAGE_DIR, "additionStage");
@@ -35,160 +49,292 @@ public class Repository {
 
     public static final File BRANCHES = join(GITLET_DIR, "branches");
 
+    /** bytes of output collected before they are written out, by commands that stream it. */
+    private static final int OUTPUT_BUFFER = 64 * 1024;
+
     public static void init() {
         if (GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already exists in the current directory.");
-            System.exit(0);
+            throw new GitletException("A Gitlet version-control system already exists in the current directory.");
         }
         GITLET_DIR.mkdir();
         COMMIT_DIR.mkdir();
         BLOBS_DIR.mkdir();
-        STAGE_DIR.mkdir();
+        TREES_DIR.mkdir();
         BRANCHES.mkdir();
-        Utils.writeObject(ADDITION_STAGE, new TreeMap<String, String>());
-        Utils.writeObject(REMOVAL_STAGE, new TreeMap<String, String>());
+        new Index().write();
         Commit commitZero = new Commit(new Date(0L), "initial commit");
         saveCommit(commitZero);
+        CommitGraph.write();
+        MessageIndex.write();
+        Catalog.write();
         updateHead("main");
         updateBranch("main", commitZero.getId());
     }
 
-    public static void add(String fileName) {
-        TreeMap<String, String> additionStage = getStage("additionStage");
-        TreeMap<String, String> removalStage = getStage("removalStage");
-        Map<String, String> trackedFiles = getCommit(getIdInBranch(getBranchInHead())).getTrackedFiles();
-        File f = findFile(fileName);
-        String id = sha1Helper(f);
-        // If the current file matches the commit version, do not stage it or remove it from staging if already staged.
-        if (removalStage.containsValue(id)) {
-            removalStage.remove(fileName);
-        } else if (!additionStage.containsValue(id) && !trackedFiles.containsValue(id)) {
-            additionStage.put(fileName, id);
-        } else if (additionStage.containsKey(fileName) && trackedFiles.containsValue(id)) {
-            additionStage.remove(fileName);
-        }
-
-        saveStage("additionStage", additionStage);
-        saveStage("removalStage", removalStage);
-        saveFileAsBlob(f, id);
+    /** stage FILENAMES, where "." stands for every file in the working directory.
+     *  the stage and the tracked files are loaded once, the files that changed since they were
+     *  last hashed are stored together on a ParallelHasher, and the index is written once. */
+    public static void add(String... fileNames) {
+        Index index = Index.read();
+        TreeMap<String, String> additionStage = index.getAdditions();
+        TreeMap<String, String> removalStage = index.getRemovals();
+        Commit head = getCommit(getIdInBranch(getBranchInHead()), CommitCache.forCommand());
+        Map<String, File> files = new TreeMap<>();
+        for (String fileName : fileNames) {
+            if (fileName.equals(".")) {
+                // every tracked file may be needed, so load them all at once.
+                head.loadFiles();
+                for (String workingFile : workingFiles()) {
+                    files.put(workingFile, join(CWD, workingFile));
+                }
+            } else {
+                files.put(fileName, findFile(fileName));
+            }
+        }
+        // a file unchanged since it was last hashed is not read at all,
+        // otherwise hash and store it in one pass, so it is read only once whatever its size.
+        Map<String, String> ids = new HashMap<>();
+        Map<String, File> changed = new HashMap<>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String id = index.cachedId(entry.getKey(), entry.getValue());
+            if (id == null || !ObjectStore.contains(BLOBS_DIR, id)) {
+                changed.put(entry.getKey(), entry.getValue());
+            } else {
+                ids.put(entry.getKey(), id);
+            }
+        }
+        if (!changed.isEmpty()) {
+            try (ParallelHasher hasher = ParallelHasher.fromConfig()) {
+                ids.putAll(hasher.store(changed, Blob.StoreOptions.fromConfig()));
+            }
+        }
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String fileName = entry.getKey();
+            String id = ids.get(fileName);
+            String trackedId = head.getFileId(fileName);
+            index.recordStat(fileName, entry.getValue(), id);
+            // blob ids cover the file name, so an equal id can only belong to the same file.
+            // If the current file matches the commit version, do not stage it or remove it from staging if already staged.
+            if (id.equals(removalStage.get(fileName))) {
+                removalStage.remove(fileName);
+            } else if (!id.equals(additionStage.get(fileName)) && !id.equals(trackedId)) {
+                additionStage.put(fileName, id);
+            } else if (additionStage.containsKey(fileName) && id.equals(trackedId)) {
+                additionStage.remove(fileName);
+            }
+        }
+        index.write();
     }
 
     // head is always pointing to the parent commit.
     public static void commit(String msg) {
         // initialized commit and read the maps
         Commit c = new Commit(msg, getIdInBranch(getBranchInHead()));
-        TreeMap<String, String> additionStageFiles = getStage("additionStage");
-        TreeMap<String, String> removalStageFiles = getStage("removalStage");
-        Map<String, String> trackedFiles = c.getTrackedFiles();
+        Index index = Index.read();
+        TreeMap<String, String> additionStageFiles = index.getAdditions();
+        TreeMap<String, String> removalStageFiles = index.getRemovals();
 
         if (additionStageFiles.isEmpty() && removalStageFiles.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
-        }
-
-        // iterate over the file names of addition stage
-        // if found same files, check the id. If id is different, update the tracked files.
-        for (String key : additionStageFiles.keySet()) {
-            if (trackedFiles.containsKey(key)) {
-                if (!trackedFiles.get(key).equals(additionStageFiles.get(key))) {
-                    trackedFiles.put(key, additionStageFiles.get(key));
-                }
-            } else {
-                trackedFiles.put(key, additionStageFiles.get(key));
-            }
+            throw new GitletException("No changes added to the commit.");
         }
 
-        // iterate over files names of remove stage
-        // remove the files in tracked files of the commit
+        // the staged files replace the tracked ones, and the files staged for removal are no longer tracked.
+        // only the trees of the directories holding them are written again.
+        Map<String, String> changes = new HashMap<>(additionStageFiles);
         for (String key : removalStageFiles.keySet()) {
-            trackedFiles.remove(key);
+            changes.put(key, null);
         }
+        c.updateFiles(changes);
 
         // clear both stages, save the new commit, and advance MAIN.
-        clearAndSaveStage();
+        index.clearStage();
+        index.write();
         saveCommit(c);
         updateBranch(getBranchInHead(), c.getId());
     }
 
     public static void rm(String fileName) {
-        TreeMap<String, String> additionStageFiles = getStage("additionStage");
-        TreeMap<String, String> removalStageFiles = getStage("removalStage");
-        Map<String, String> trackedFiles = getCommit(getIdInBranch(getBranchInHead())).getTrackedFiles();
-        String id = trackedFiles.get(fileName);
+        Index index = Index.read();
+        TreeMap<String, String> additionStageFiles = index.getAdditions();
+        TreeMap<String, String> removalStageFiles = index.getRemovals();
+        String id = getCommit(getIdInBranch(getBranchInHead()), CommitCache.forCommand()).getFileId(fileName);
 
-        File f = Utils.join(CWD, fileName);
         // If the file is not staged for addition and not tracked by the head commit
-        if (!additionStageFiles.containsKey(fileName) && !trackedFiles.containsKey(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+        if (!additionStageFiles.containsKey(fileName) && id == null) {
+            throw new GitletException("No reason to remove the file.");
         }
         // If the file is staged for addition, unstage it
         if (additionStageFiles.containsKey(fileName)) {
             additionStageFiles.remove(fileName);
         }
-        // if the file is already deleted, stage it for removal.
         // If the file is tracked in the current commit, stage it for removal and remove it from the working directory
-        if (!f.exists()) {
-            removalStageFiles.put(fileName, id);
-        } else if (trackedFiles.containsKey(fileName)) {
+        if (id != null) {
             removalStageFiles.put(fileName, id);
-            f.delete();
+            deleteWorkingFile(fileName);
+            index.forgetStat(fileName);
         }
-        saveStage("additionStage", additionStageFiles);
-        saveStage("removalStage", removalStageFiles);
+        index.write();
     }
 
-    public static void log() {
-        Commit p = getCommit(getIdInBranch(getBranchInHead()));
-        StringBuilder fullString = new StringBuilder();
+    /** which commits log prints and how: at most LIMIT of them, made between SINCE and UNTIL (ms),
+     *  each on one line if ONELINE. */
+    public record LogOptions(int limit, long since, long until, boolean oneline) {
+
+        /** return the options given by ARGS, or null if they are malformed:
+         *  -n COUNT, --since DATE, --until DATE and --oneline, where DATE is yyyy-MM-dd or
+         *  yyyy-MM-ddTHH:mm:ss in the local time zone, and a day given alone is included whole.
+         *  --since ends the walk at the first older commit; see log. */
+        public static LogOptions parse(String[] args) {
+            int limit = Integer.MAX_VALUE;
+            long since = Long.MIN_VALUE;
+            long until = Long.MAX_VALUE;
+            boolean oneline = false;
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    switch (args[i]) {
+                        case "-n" -> limit = Integer.parseInt(args[++i]);
+                        case "--since" -> since = parseDate(args[++i], false);
+                        case "--until" -> until = parseDate(args[++i], true);
+                        case "--oneline" -> oneline = true;
+                        default -> {
+                            return null;
+                        }
+                    }
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException | DateTimeParseException excp) {
+                return null;
+            }
+            return limit < 0 ? null : new LogOptions(limit, since, until, oneline);
+        }
+
+        private static long parseDate(String date, boolean endOfDay) {
+            ZoneId zone = ZoneId.systemDefault();
+            if (date.contains("T")) {
+                return LocalDateTime.parse(date).atZone(zone).toInstant().toEpochMilli();
+            }
+            LocalDate day = LocalDate.parse(date);
+            if (endOfDay) {
+                return day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+            }
+            return day.atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
 
-        // traverse the commit linked list
-        while (true) {
-            fullString.append(commitInfo(p));
-            if (p.getParent() == null) {
+    /** print the history of the head commit, following first parents, as the commits are read,
+     *  so the first lines come out at once however long the history is.
+     *  with a commit-graph the parents and times come from it, and only printed commits are opened. */
+    public static void log(LogOptions options) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER));
+        CommitCache commits = CommitCache.forCommand();
+        log(options, getIdInBranch(getBranchInHead()), CommitGraph.read(), id -> getCommit(id, commits), out);
+        out.flush();
+    }
+
+    /** print to OUT the history of commit HEAD as log does, taking parents and times from GRAPH,
+     *  which may be null, and opening commits with COMMITS.
+     *  like git log --since, the walk stops at the first commit older than OPTIONS.since(), without
+     *  looking further back for newer ones: first parents are expected to be older than their
+     *  children, and a commit made on a machine whose clock was behind hides the history before it. */
+    static void log(LogOptions options, String head, CommitGraph graph, Function<String, Commit> commits,
+                    PrintWriter out) {
+        DateTimeFormatter dates = Commit.dateFormatter();
+        String id = head;
+        int printed = 0;
+        while (id != null && printed < options.limit()) {
+            int pos = graph == null ? CommitDag.NONE : graph.find(id);
+            Commit c = pos == CommitDag.NONE ? commits.apply(id) : null;
+            long time = c == null ? graph.timeAt(pos) : c.getTimeStamp().getTime();
+            if (time < options.since()) {
                 break;
             }
-            p = getCommit(p.getParent());
+            if (time <= options.until()) {
+                if (c == null) {
+                    c = commits.apply(id);
+                }
+                out.print(options.oneline() ? onelineInfo(c) : commitInfo(c, dates));
+                printed += 1;
+            }
+            if (c != null) {
+                id = c.getParent();
+            } else {
+                int parent = graph.parentAt(pos);
+                id = parent == CommitDag.NONE ? null : graph.idAt(parent);
+            }
         }
-        System.out.println(fullString);
+        if (!options.oneline()) {
+            out.println();
+        }
+    }
+
+    private static StringBuilder onelineInfo(Commit c) {
+        String message = c.getMessage();
+        int newline = message.indexOf('\n');
+        return new StringBuilder().append(c.getId(), 0, 7).append(" ")
+                .append(newline < 0 ? message : message.substring(0, newline)).append("\n");
+    }
+
+    private static StringBuilder commitInfo(Commit c, DateTimeFormatter dates) {
+        return commitInfo(new Catalog.Entry(c.getId(), c.getTimeStamp().getTime(), c.getParent(),
+                c.getSecondParent(), c.getMessage()), dates);
     }
 
-    private static StringBuilder commitInfo(Commit c) {
+    private static StringBuilder commitInfo(Catalog.Entry c, DateTimeFormatter dates) {
         StringBuilder fullString = new StringBuilder();
         fullString.append("===\n");
-        fullString.append("commit ").append(c.getId()).append("\n");
-        if (c.getSecondParent() != null) {
-            fullString.append("Merge: ").append(c.getParent(), 0, 7).append(" ")
-                    .append(c.getSecondParent(), 0, 7).append("\n");
+        fullString.append("commit ").append(c.id()).append("\n");
+        if (c.secondParent() != null) {
+            fullString.append("Merge: ").append(c.parent(), 0, 7).append(" ")
+                    .append(c.secondParent(), 0, 7).append("\n");
         }
-        fullString.append("Date: ").append(c.getDate()).append("\n");
-        fullString.append(c.getMessage());
+        fullString.append("Date: ").append(dates.format(Instant.ofEpochMilli(c.time()))).append("\n");
+        fullString.append(c.message());
         fullString.append("\n\n");
         return fullString;
     }
 
 
-    public static void globalLog() {
-        StringBuilder fullString = new StringBuilder();
-        fullString.append("\n\n");
-        for (String id : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            Commit c = getCommit(id);
-            fullString.append(commitInfo(c));
-        }
-        System.out.println(fullString);
+    /** print every commit, in id order or newest first if BYDATE. the commits are listed from
+     *  the catalog, which is rebuilt first if it is missing, so no commit object is opened. */
+    public static void globalLog(boolean byDate) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER));
+        out.print("\n\n");
+        DateTimeFormatter dates = Commit.dateFormatter();
+        Catalog.readOrWrite().forEach(byDate, entry -> out.print(commitInfo(entry, dates)));
+        out.println();
+        out.flush();
     }
 
-    public static void find(String arg) {
-        StringBuilder fullString = new StringBuilder();
-        for (String id : Utils.plainFilenamesIn(COMMIT_DIR)) {
-            Commit c = getCommit(id);
-            if (c.getMessage().equals(arg)) {
-                fullString.append(id).append("\n");
+    /** print the ids of the commits whose message is ARG, or, if MODE is "--contains" or "--regex",
+     *  contains ARG or has a match of the regular expression ARG, in id order or newest first if BYDATE.
+     *  the messages are read from the message index, which is built first if it is missing,
+     *  and the dates from the commit-graph, so commits are only opened if they are missing from it. */
+    public static void find(String mode, String arg, boolean byDate) {
+        MessageIndex messages = MessageIndex.readOrWrite();
+        List<String> ids;
+        if (mode == null) {
+            ids = messages.exact(arg);
+        } else if (mode.equals("--contains")) {
+            ids = messages.containing(arg);
+        } else {
+            Pattern pattern = null;
+            try {
+                pattern = Pattern.compile(arg);
+            } catch (PatternSyntaxException excp) {
+                throw new GitletException("Invalid pattern.");
+            }
+            ids = messages.matching(pattern);
+        }
+        if (byDate) {
+            try (CommitScan scan = CommitScan.fromConfig()) {
+                ids = scan.sortByDate(ids);
             }
         }
+        StringBuilder fullString = new StringBuilder();
+        for (String id : ids) {
+            fullString.append(id).append("\n");
+        }
         if (fullString.isEmpty()) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+            throw new GitletException("Found no commit with that message.");
         }
         System.out.println(fullString);
     }
@@ -207,35 +353,58 @@ public class Repository {
         }
         fullString.append("\n=== Staged Files ===\n");
         // iterate over addition stage.
-        for (String fileName : getStage("additionStage").keySet()) {
+        Index index = Index.read();
+        for (String fileName : index.getAdditions().keySet()) {
             fullString.append(fileName).append("\n");
         }
         fullString.append("\n=== Removed Files ===\n");
         // iterate over removal stage.
-        for (String fileName : getStage("removalStage").keySet()) {
+        for (String fileName : index.getRemovals().keySet()) {
             fullString.append(fileName).append("\n");
         }
         fullString.append("\n=== Modifications Not Staged For Commit ===\n");
-        // iterate over files in CWD
-        //        Map<String, String> trackedFiles = getCommit(getIdInHead()).getTrackedFiles();
-        //        for (String fileName : Utils.plainFilenamesIn(CWD)) {
-        //            if (sha1Helper(findFile(fileName)));
-        //        }
+        CommitCache commits = CommitCache.forCommand();
+        Map<String, String> trackedFiles = getCommit(getIdInBranch(getBranchInHead()), commits).getTrackedFiles();
+        List<String> workingFiles = workingFiles();
+        // files are compared against their staged version if there is one, otherwise the tracked one.
+        Map<String, String> expected = new HashMap<>(trackedFiles);
+        expected.keySet().removeAll(index.getRemovals().keySet());
+        expected.putAll(index.getAdditions());
+        TreeSet<String> changed;
+        try (ParallelHasher hasher = ParallelHasher.fromConfig()) {
+            changed = index.changed(expected, hasher);
+        }
+        for (String fileName : changed) {
+            String kind = join(CWD, fileName).isFile() ? "modified" : "deleted";
+            fullString.append(fileName).append(" (").append(kind).append(")\n");
+        }
         fullString.append("\n=== Untracked Files ===\n");
+        for (String fileName : workingFiles) {
+            if (!expected.containsKey(fileName)) {
+                fullString.append(fileName).append("\n");
+            }
+        }
+        // keep the metadata of files hashed above, so the next status can skip them.
+        index.writeIfChanged();
         System.out.println(fullString);
     }
 
     public static void restore(String commitId, String fileName) {
+        CommitCache commits = CommitCache.forCommand();
         Commit c;
         if (commitId == null) {
-            c = getCommit(getIdInBranch(getBranchInHead()));
+            c = getCommit(getIdInBranch(getBranchInHead()), commits);
         } else {
-            c = getCommit(commitId);
+            c = getCommit(commitId, commits);
         }
-        String blobId = c.getTrackedFiles().get(fileName);
+        restore(c, fileName);
+    }
+
+    /** write FILENAME as tracked by commit C into the working directory. */
+    private static void restore(Commit c, String fileName) {
+        String blobId = c.getFileId(fileName);
         if (blobId == null) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw new GitletException("File does not exist in that commit.");
         }
         writeBlobToFile(blobId, fileName);
     }
@@ -243,36 +412,32 @@ public class Repository {
     public static void branch(String branchName) {
         File newBranch = Utils.join(BRANCHES, branchName);
         if (newBranch.exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            throw new GitletException("A branch with that name already exists.");
         }
         Utils.writeContents(newBranch, getIdInBranch(getBranchInHead()));
 
     }
 
     public static void switchBranch(String branchName) {
-        Commit destCommit = getCommit(getIdInBranch(branchName));
-        Commit sourceCommit = getCommit(getIdInBranch(getBranchInHead()));
-        if (destCommit == sourceCommit) {
-            System.out.println("No need to switch to the current branch.");
-            System.exit(0);
+        CommitCache commits = CommitCache.forCommand();
+        Commit destCommit = getCommit(getIdInBranch(branchName), commits);
+        Commit sourceCommit = getCommit(getIdInBranch(getBranchInHead()), commits);
+        if (branchName.equals(getBranchInHead())) {
+            throw new GitletException("No need to switch to the current branch.");
         }
-        if (untrackedFileExist(destCommit)) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
+        if (untrackedFileExist(destCommit, sourceCommit)) {
+            throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
         }
         replaceTrackedFiles(destCommit, sourceCommit);
         updateHead(branchName);
     }
 
-    /** return true if a working file is untracked in the current branch and would be overwritten by the switch */
-    private static boolean untrackedFileExist(Commit destCommit) {
-        Commit sourceCommit = getCommit(getIdInBranch(getBranchInHead()));
+    /** return true if a working file is untracked in SOURCECOMMIT, the head commit,
+     *  and would be overwritten by the switch */
+    private static boolean untrackedFileExist(Commit destCommit, Commit sourceCommit) {
         Map<String, String> sourceTrackedFiles = sourceCommit.getTrackedFiles();
-        Map<String, String> destCommitFiles = destCommit.getTrackedFiles();
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
-            if (!sourceTrackedFiles.containsKey(fileName) && destCommitFiles.containsKey(fileName)
-                    && Utils.join(CWD, fileName).exists()) {
+        for (String fileName : destCommit.getTrackedFiles().keySet()) {
+            if (!sourceTrackedFiles.containsKey(fileName) && Utils.join(CWD, fileName).exists()) {
                 return true;
             }
         }
@@ -280,89 +445,94 @@ public class Repository {
     }
 
     /** replace the CWD with tracked files in destCommit,
-     * delete files in CWD that is tracked by current commit but not in tracked files of destCommit. */
+     * delete files in CWD that is tracked by current commit but not in tracked files of destCommit.
+     * a file tracked the same way by both commits is kept if the index shows it is unchanged. */
     private static void replaceTrackedFiles(Commit destCommit, Commit sourceCommit) {
         Map<String, String> destTrackedFiles = destCommit.getTrackedFiles();
-        Map<String, String> sourceTrackedFiles = sourceCommit.getTrackedFiles();
-        for (String fileName : sourceTrackedFiles.keySet()) {
-            if (!destTrackedFiles.containsKey(fileName)) {
-                Utils.join(CWD, fileName).delete();
+        Map<String, String> changes = sourceCommit.changesTo(destCommit);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteWorkingFile(change.getKey());
             }
         }
-        for (String fileName : destTrackedFiles.keySet()) {
-            writeBlobToFile(destTrackedFiles.get(fileName), fileName);
+        Index index = Index.read();
+        DeltaCache cache = new DeltaCache();
+        for (Map.Entry<String, String> file : destTrackedFiles.entrySet()) {
+            String fileName = file.getKey();
+            if (!changes.containsKey(fileName)
+                    && file.getValue().equals(index.cachedId(fileName, join(CWD, fileName)))) {
+                continue;
+            }
+            writeBlobToFile(file.getValue(), fileName, cache);
         }
     }
 
     public static void removeBranch(String branchName) {
         File branchFile = Utils.join(BRANCHES, branchName);
         if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException("A branch with that name does not exist.");
         }
         if (getBranchInHead().equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
         }
         branchFile.delete();
     }
 
     public static void reset(String commitId) {
+        CommitCache commits = CommitCache.forCommand();
         Commit destCommit;
         if (commitId == null) {
-            destCommit = getCommit(getIdInBranch(getBranchInHead()));
+            destCommit = getCommit(getIdInBranch(getBranchInHead()), commits);
         } else {
-            destCommit = getCommit(commitId);
+            destCommit = getCommit(commitId, commits);
         }
-        Commit sourceCommit = getCommit(getIdInBranch(getBranchInHead()));
-        if (untrackedFileExist(destCommit)) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
+        Commit sourceCommit = getCommit(getIdInBranch(getBranchInHead()), commits);
+        if (untrackedFileExist(destCommit, sourceCommit)) {
+            throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
         }
         replaceTrackedFiles(destCommit, sourceCommit);
-        updateBranch(getBranchInHead(), commitId);
+        updateBranch(getBranchInHead(), destCommit.getId());
         clearAndSaveStage();
     }
 
     public static void merge(String otherBranch) {
         if (!Utils.join(BRANCHES, otherBranch).exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw new GitletException("A branch with that name does not exist.");
         }
 
         String headBranch = getBranchInHead();
         if (headBranch.equals(otherBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
 
-        TreeMap<String, String> additionStageFiles = getStage("additionStage");
-        TreeMap<String, String> removalStageFiles = getStage("removalStage");
-        if (!additionStageFiles.isEmpty() || !removalStageFiles.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+        Index index = Index.read();
+        if (!index.getAdditions().isEmpty() || !index.getRemovals().isEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
         }
 
-        Commit headCommit = getCommit(getIdInBranch(headBranch));
-        Commit otherHeadCommit = getCommit(getIdInBranch(otherBranch));
+        CommitCache commits = CommitCache.forCommand();
+        Commit headCommit = getCommit(getIdInBranch(headBranch), commits);
+        Commit otherHeadCommit = getCommit(getIdInBranch(otherBranch), commits);
 
-        if (untrackedFileExist(otherHeadCommit)) {
-            System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-            System.exit(0);
+        if (untrackedFileExist(otherHeadCommit, headCommit)) {
+            throw new GitletException("There is an untracked file in the way; delete it, or add and commit it first.");
         }
 
-        Commit splitCommit = findSplitPoint(headCommit, otherHeadCommit);
+        Commit splitCommit = findSplitPoint(headCommit, otherHeadCommit, commits);
+        if (splitCommit == null) {
+            throw new GitletException("The branches have no common ancestor.");
+        }
 
         if (headCommit.getId().equals(splitCommit.getId())) {
             updateBranch(headBranch, otherHeadCommit.getId());
             updateHead(headBranch);
             replaceTrackedFiles(otherHeadCommit, headCommit);
             System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            return;
         }
         if (otherHeadCommit.getId().equals(splitCommit.getId())) {
             System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+            return;
         }
 
         Commit c = new Commit("Merged " + otherBranch + " into " + getBranchInHead() + ".",
@@ -373,6 +543,7 @@ public class Repository {
         Map<String, String> headFiles = new HashMap<>(headCommit.getTrackedFiles());
         Map<String, String> otherFiles = new HashMap<>(otherHeadCommit.getTrackedFiles());
         Map<String, String> splitFiles = splitCommit.getTrackedFiles();
+        List<String> conflicts = new ArrayList<>();
 
         for (String fileName : splitFiles.keySet()) {
             // if both heads contain the same file name.
@@ -390,7 +561,7 @@ public class Repository {
                 // if other head modified the file but head didn't.
                 if (headFiles.get(fileName).equals(splitFiles.get(fileName))
                         && !otherFiles.get(fileName).equals(splitFiles.get(fileName))) {
-                    restore(otherHeadCommit.getId(), fileName);
+                    restore(otherHeadCommit, fileName);
                     newTrackedFiles.put(fileName, otherFiles.get(fileName));
                 }
                 // if other head and head modified the same file in different ways
@@ -398,6 +569,7 @@ public class Repository {
                         && !headFiles.get(fileName).equals(splitFiles.get(fileName))
                         && !headFiles.get(fileName).equals(otherFiles.get(fileName))) {
                     mergeConflict(fileName, otherFiles.get(fileName));
+                    conflicts.add(fileName);
                 }
                 headFiles.remove(fileName);
                 otherFiles.remove(fileName);
@@ -405,7 +577,7 @@ public class Repository {
                     && !otherFiles.containsKey(fileName)) {
                 // files unmodified in the current branch,
                 // and absent in the given branch should be removed (and untracked).
-                Utils.join(CWD, fileName).delete();
+                deleteWorkingFile(fileName);
                 newTrackedFiles.remove(fileName, splitFiles.get(fileName));
                 headFiles.remove(fileName);
             } else if (otherFiles.containsKey(fileName) && otherFiles.get(fileName).equals(splitFiles.get(fileName))
@@ -419,22 +591,32 @@ public class Repository {
                 // files modified in the current branch,
                 // and absent in the given branch
                 mergeConflict(fileName, null);
+                conflicts.add(fileName);
             } else if (otherFiles.containsKey(fileName) && !otherFiles.get(fileName).equals(splitFiles.get(fileName))
                     && !headFiles.containsKey(fileName)) {
                 // files modified in the given branch,
                 // and absent in the current branch
                 mergeConflict(fileName, null);
+                conflicts.add(fileName);
             }
         }
         // files not present at the split point and only in the given branch should be restored and staged.
         for (String fileName : otherFiles.keySet()) {
             if (!headFiles.containsKey(fileName)) {
-                restore(otherHeadCommit.getId(), fileName);
+                restore(otherHeadCommit, fileName);
                 newTrackedFiles.put(fileName, otherFiles.get(fileName));
             } else if (!Objects.equals(headFiles.get(fileName), otherFiles.get(fileName))) {
                 // if file not present at the split have same file name
                 // but have different content in current and other commit.
                 mergeConflict(fileName, otherFiles.get(fileName));
+                conflicts.add(fileName);
+            }
+        }
+        // the spec stages the result of a conflict, so the merge commit tracks the file with its markers.
+        for (String fileName : conflicts) {
+            File f = findFile(fileName);
+            if (f.exists()) {
+                newTrackedFiles.put(fileName, saveFileAsBlob(f));
             }
         }
         clearAndSaveStage();
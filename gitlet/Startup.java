@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** The fast-start launch mode of gitlet and the benchmark that keeps it honest.
+ *  java gitlet.Startup archive [FILE] trains a JVM on every command in a scratch repository and
+ *  dumps the classes it loaded into the AppCDS archive FILE (gitlet.jsa by default), so later JVMs
+ *  map them instead of loading and verifying them again. The JVM only archives classes from jars,
+ *  so gitlet must be run from a jar in both modes.
+ *  java gitlet.Startup bench [FILE] [ROUNDS] runs the short commands in their own JVMs, in the
+ *  default mode and, if FILE exists, in the fast mode, and prints the median wall time from exec
+ *  to exit of each. The fast mode is fastFlags() plus -XX:SharedArchiveFile=FILE.
+ *  @author Haichao
+ */
+public class Startup {
+
+    public static final String DEFAULT_ARCHIVE = "gitlet.jsa";
+
+    private static final int DEFAULT_ROUNDS = 5;
+
+    /** return the JVM flags of the fast mode besides the archive: short commands finish before C2
+     *  pays off, and the serial collector starts no GC threads. */
+    public static List<String> fastFlags() {
+        return List.of("-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC");
+    }
+
+    /** return the commands run by the training JVM, so the archive covers every command class. */
+    private static String[][] training() {
+        return new String[][] {
+            {"init"}, {"add", "a.txt", "b.txt"}, {"commit", "first"}, {"status"}, {"branch", "other"},
+            {"log"}, {"log", "--oneline", "-n", "1"}, {"global-log"}, {"find", "first"},
+            {"find", "--contains", "fir"}, {"switch", "other"}, {"rm", "b.txt"}, {"commit", "second"},
+            {"switch", "main"}, {"merge", "other"}, {"restore", "--", "a.txt"}, {"reset", "main"},
+            {"rm-branch", "other"}, {"repack"}, {"commit-graph", "write"}, {"catalog", "verify"},
+        };
+    }
+
+    /** return the commands timed by the benchmark; each round leaves the repository as it found it. */
+    private static String[][] benchmark() {
+        return new String[][] {
+            {"status"}, {"branch", "bench"}, {"rm-branch", "bench"}, {"log"}, {"global-log"}, {"find", "first"},
+        };
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Startup archive [FILE] | bench [FILE] [ROUNDS] | train");
+            return;
+        }
+        switch (args[0]) {
+            case "archive":
+                try {
+                    archive(archiveFile(args));
+                } catch (GitletException excp) {
+                    System.out.println(excp.getMessage());
+                }
+                break;
+            case "bench":
+                bench(archiveFile(args), args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS);
+                break;
+            case "train":
+                train();
+                break;
+            default:
+                System.out.println("No command with that name exists.");
+        }
+    }
+
+    private static File archiveFile(String[] args) {
+        return new File(args.length > 1 ? args[1] : DEFAULT_ARCHIVE).getAbsoluteFile();
+    }
+
+    /** dump the classes loaded by a training run into ARCHIVE. */
+    public static void archive(File archive) throws IOException, InterruptedException {
+        for (String entry : classPath().split(File.pathSeparator)) {
+            if (new File(entry).isDirectory()) {
+                throw new GitletException("A class archive needs gitlet on the class path as a jar, "
+                        + "e.g. `jar cf gitlet.jar gitlet/*.class` and `java -cp gitlet.jar gitlet.Startup archive`.");
+            }
+        }
+        Path scratch = Files.createTempDirectory("gitlet-train");
+        try {
+            int status = launch(scratch, List.of("-XX:ArchiveClassesAtExit=" + archive), "gitlet.Startup", "train");
+            if (status != 0 || !archive.exists()) {
+                throw new GitletException("Could not write the class archive " + archive + ".");
+            }
+            System.out.println("Wrote " + archive + " (" + archive.length() / 1024 + " KiB).");
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    /** run training() in the working directory, which must be empty, in this JVM. */
+    private static void train() {
+        Utils.writeContents(Utils.join(Repository.CWD, "a.txt"), "a\n");
+        Utils.writeContents(Utils.join(Repository.CWD, "b.txt"), "b\n");
+        for (String[] command : training()) {
+            try {
+                Main.run(command);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+        }
+        System.out.flush();
+    }
+
+    /** print the median startup time of each benchmark() command over ROUNDS runs. */
+    public static void bench(File archive, int rounds) throws IOException, InterruptedException {
+        String[][] commands = benchmark();
+        List<List<String>> modes = new ArrayList<>();
+        modes.add(List.of());
+        if (archive.exists()) {
+            List<String> fast = new ArrayList<>(fastFlags());
+            fast.add("-XX:SharedArchiveFile=" + archive);
+            modes.add(fast);
+        }
+        Path scratch = Files.createTempDirectory("gitlet-bench");
+        try {
+            launch(scratch, List.of(), "gitlet.Startup", "train");
+            long[][][] times = new long[modes.size()][commands.length][rounds];
+            for (int round = 0; round < rounds; round++) {
+                for (int mode = 0; mode < modes.size(); mode++) {
+                    for (int i = 0; i < commands.length; i++) {
+                        long start = System.nanoTime();
+                        launch(scratch, modes.get(mode), "gitlet.Main", commands[i]);
+                        times[mode][i][round] = System.nanoTime() - start;
+                    }
+                }
+            }
+            System.out.printf("%-20s %12s%s%n", "command", "default ms", modes.size() > 1 ? String.format(" %12s", "fast ms") : "");
+            for (int i = 0; i < commands.length; i++) {
+                StringBuilder line = new StringBuilder(String.format("%-20s", String.join(" ", commands[i])));
+                for (long[][] mode : times) {
+                    line.append(String.format(" %12.1f", median(mode[i]) / 1e6));
+                }
+                System.out.println(line);
+            }
+            if (modes.size() == 1) {
+                System.out.println("No archive at " + archive + "; run `java gitlet.Startup archive` to time the fast mode.");
+            }
+        } finally {
+            delete(scratch);
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /** run MAINCLASS with ARGS in a new JVM with FLAGS in DIR, discarding its output, and return its exit status. */
+    private static int launch(Path dir, List<String> flags, String mainClass, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(flags);
+        command.add("-cp");
+        command.add(classPath());
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start().waitFor();
+    }
+
+    /** the class path of this JVM with absolute entries, as the child JVMs run in another directory. */
+    private static String classPath() {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            entries.add(new File(entry).getAbsolutePath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -1,19 +1,143 @@
 package gitlet;
 
+import org.junit.After;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.InflaterInputStream;
 
 import static gitlet.HelperMethods.*;
 import static gitlet.Repository.CWD;
 import static gitlet.Utils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class TestClass {
 
+    /** directories made by scratch(), deleted after each test. */
+    private final List<Path> scratches = new ArrayList<>();
+
+    /** return a new empty directory to run gitlet in. */
+    private Path scratch() throws IOException {
+        Path dir = Files.createTempDirectory("gitlet-test").toRealPath();
+        scratches.add(dir);
+        return dir;
+    }
+
+    @After
+    public void deleteScratches() throws IOException {
+        for (Path dir : scratches) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    /** start MAINCLASS with ARGS in its own JVM in DIR, as Repository.CWD is fixed in this one,
+     *  with its stderr sent to its stdout. */
+    private static Process start(Path dir, String mainClass, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        command.add(String.join(File.pathSeparator, classPath));
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+    }
+
+    /** run MAINCLASS with ARGS in its own JVM in DIR and return what it printed to stdout and stderr. */
+    private static String run(Path dir, String mainClass, String... args) throws IOException, InterruptedException {
+        Process process = start(dir, mainClass, args);
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return output;
+    }
+
+    /** run `java gitlet.Main ARGS` in DIR and return its output. */
+    private static String gitlet(Path dir, String... args) throws IOException, InterruptedException {
+        return run(dir, "gitlet.Main", args);
+    }
+
+    /** write CONTENTS to working file NAME of DIR. */
+    private static void write(Path dir, String name, String contents) throws IOException {
+        Files.writeString(dir.resolve(name), contents);
+    }
+
+    /** return the loose object files of the repository in DIR. */
+    private static List<Path> looseObjects(Path dir) throws IOException {
+        return looseObjects(dir, "commits", "trees", "blobs");
+    }
+
+    /** return the loose object files of KINDS in the repository in DIR. */
+    private static List<Path> looseObjects(Path dir, String... kinds) throws IOException {
+        List<Path> result = new ArrayList<>();
+        for (String kind : kinds) {
+            try (Stream<Path> files = Files.walk(dir.resolve(".gitlet").resolve(kind))) {
+                files.filter(Files::isRegularFile).forEach(result::add);
+            }
+        }
+        return result;
+    }
+
+    /** return the head of each branch of the repository in DIR. */
+    private static Map<String, String> branches(Path dir) throws IOException {
+        Map<String, String> heads = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir.resolve(".gitlet/branches"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                heads.put(file.getFileName().toString(), Files.readString(file));
+            }
+        }
+        return heads;
+    }
+
     @Test
     public void shaHashingTest() {
         Commit c = new Commit(new Date(0L), "Initial Commit");
@@ -81,9 +205,1112 @@ public class TestClass {
         Commit four = new Commit("4", root.getId());
         Commit one = new Commit("1", three.getId(), four.getId());
         Commit two = new Commit("2", four.getId());
-        Commit result = MergeHelper.findSplitPoint(one, two);
+        Commit result = MergeHelper.findSplitPoint(one, two, new CommitCache());
         System.out.println(result);
 
     }
 
+    @Test
+    public void commitCacheEvictsByWeight() {
+        CommitCache cache = new CommitCache(3);
+        Commit small = new Commit(new Date(0L), "small");
+        Commit large = new Commit(new Date(1L), "large");
+        large.track("a.txt", "1");
+        large.track("b.txt", "2");
+        cache.put(small);
+        assertTrue(cache.get(small.getId()) == small);
+        cache.put(large);
+        assertEquals(3L, cache.weight());
+        assertEquals(null, cache.get(small.getId()));
+        assertTrue(cache.get(large.getId()) == large);
+        large.track("c.txt", "3");
+        // the large commit outgrows the budget when it is found and weighed again.
+        assertTrue(cache.get(large.getId()) == large);
+        assertEquals(null, cache.get(large.getId()));
+        assertEquals(3L, cache.hits());
+        assertEquals(2L, cache.misses());
+    }
+
+    @Test
+    public void commandsReadCommitsThroughOneCache() {
+        Commit root = new Commit(new Date(0L), "root");
+        CommitCache[] seen = new CommitCache[2];
+        Commit[] found = new Commit[1];
+        CommandThread.execute(() -> {
+            seen[0] = CommitCache.forCommand();
+            seen[0].put(root);
+            seen[1] = CommitCache.forCommand();
+            found[0] = HelperMethods.getCommit(root.getId(), seen[1]);
+        });
+        assertSame(seen[0], seen[1]);
+        // the commit put earlier in the command is found without reading the object store.
+        assertSame(root, found[0]);
+        assertEquals(1L, seen[0].hits());
+    }
+
+    @Test
+    public void messageTokensSkipCutWords() {
+        assertEquals(List.of("Fix", "parser", "bug"), MessageIndex.tokens("Fix parser bug", false));
+        // "x" and "b" may be the ends of longer words in a message containing the text.
+        assertEquals(List.of("parser"), MessageIndex.tokens("x parser b", true));
+        assertEquals(List.of(), MessageIndex.tokens("parser", true));
+    }
+
+    @Test
+    public void generatorPlansTheSameHistoryForTheSameSeed() {
+        Generator.Profile profile = new Generator.Profile(500, 200, 10, 3, 1, 512, 1, 4096, 0.2, false);
+        Generator one = new Generator(profile, 7);
+        Generator two = new Generator(profile, 7);
+        Generator other = new Generator(profile, 8);
+        int merges = 0;
+        boolean differs = false;
+        for (Generator.Step step = one.next(); step != null; step = one.next()) {
+            assertEquals(step, two.next());
+            differs |= !step.equals(other.next());
+            merges += step.merged() == null ? 0 : 1;
+        }
+        assertEquals(null, two.next());
+        assertTrue(differs);
+        assertTrue("only " + merges + " merges", merges > 50);
+    }
+
+    @Test
+    public void generatorWritesTheSameHeadsForTheSameSeed() throws Exception {
+        String[] settings = {"commits=300", "files=100", "branches=6", "mergeRate=0.2", "checkout=false"};
+        Path one = scratch();
+        Path two = scratch();
+        Path other = scratch();
+        run(one, "gitlet.Generator", concat("7", settings));
+        run(two, "gitlet.Generator", concat("7", settings));
+        run(other, "gitlet.Generator", concat("8", settings));
+        Map<String, String> heads = branches(one);
+        assertEquals(7, heads.size());
+        assertEquals(heads, branches(two));
+        assertNotEquals(heads, branches(other));
+        assertEquals(gitlet(one, "log"), gitlet(two, "log"));
+    }
+
+    private static String[] concat(String first, String[] rest) {
+        String[] result = new String[rest.length + 1];
+        result[0] = first;
+        System.arraycopy(rest, 0, result, 1, rest.length);
+        return result;
+    }
+
+    @Test
+    public void configChecksItsOperands() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        assertEquals("Incorrect operands.\n", gitlet(dir, "config"));
+        assertEquals("Incorrect operands.\n", gitlet(dir, "config", Config.COMPRESSION));
+        assertEquals("Bad config value for core.compression: 42\n", gitlet(dir, "config", Config.COMPRESSION, "42"));
+        assertEquals("Bad config value for core.compression: fast\n",
+                gitlet(dir, "config", Config.COMPRESSION, "fast"));
+        assertEquals("", gitlet(dir, "config", Config.COMPRESSION, "9"));
+        assertEquals("Bad config value for pack.deltaDepth: 256\n", gitlet(dir, "config", Config.DELTA_DEPTH, "256"));
+        assertEquals("", gitlet(dir, "config", Config.DELTA_DEPTH, "255"));
+        write(dir, "a.txt", "compressed\n");
+        assertEquals("", gitlet(dir, "add", "a.txt"));
+    }
+
+    @Test
+    public void packIndexRoundTrip() throws Exception {
+        String[] ids = {Utils.sha1("a"), Utils.sha1("b"), Utils.sha1("c"), Utils.sha1("d")};
+        Arrays.sort(ids);
+        File idx = scratch().resolve("test.idx").toFile();
+        PackIndex.write(idx, ids, new long[] {12, 30, 70, 5L << 30}, new long[] {18, 40, 5, 9});
+        PackIndex index = new PackIndex(idx);
+        assertEquals(4, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, index.find(ids[i]));
+            assertEquals(ids[i], index.idAt(i));
+        }
+        assertEquals(70L, index.offsetAt(2));
+        assertEquals(9L, index.lengthAt(3));
+        assertEquals(5L << 30, index.offsetAt(3));
+        assertEquals(-1, index.find(Utils.sha1("e")));
+        assertEquals(-1, index.find(ids[0].substring(0, 8)));
+        assertEquals(List.of(ids[1]), index.matches(ids[1].substring(0, 6), 10));
+        assertEquals(Arrays.asList(ids), index.matches("", 10));
+        assertEquals(List.of(ids[0], ids[1]), index.matches("", 2));
+    }
+
+    @Test
+    public void repackedObjectsAreFoundByIdAndPrefix() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        write(dir, "a.txt", "first\n");
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "first");
+        String first = branches(dir).get("main");
+        write(dir, "a.txt", "second\n");
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "second");
+        String log = gitlet(dir, "log");
+        assertEquals("", gitlet(dir, "repack"));
+        try (Stream<Path> packs = Files.list(dir.resolve(".gitlet/packs"))) {
+            assertTrue(packs.anyMatch(p -> p.toString().endsWith(".idx")));
+        }
+        assertEquals(List.of(), looseObjects(dir));
+        assertEquals(log, gitlet(dir, "log"));
+        assertEquals("", gitlet(dir, "restore", first.substring(0, 8), "--", "a.txt"));
+        assertEquals("first\n", Files.readString(dir.resolve("a.txt")));
+        write(dir, "b.txt", "new\n");
+        gitlet(dir, "add", "b.txt");
+        assertEquals("", gitlet(dir, "commit", "third"));
+        assertEquals("", gitlet(dir, "repack"));
+        try (Stream<Path> packs = Files.list(dir.resolve(".gitlet/packs"))) {
+            // the second repack merged the first pack of each kind into its own.
+            assertEquals(3, packs.filter(p -> p.toString().endsWith(".idx")).count());
+        }
+        assertEquals("", gitlet(dir, "repack"));
+        assertEquals(List.of(), looseObjects(dir));
+        assertEquals("", gitlet(dir, "reset", first));
+        assertEquals("first\n", Files.readString(dir.resolve("a.txt")));
+    }
+
+    @Test
+    public void prefixesMatchingCommitsMissingFromTheGraphAreAmbiguous() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        write(dir, "a.txt", "a\n");
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "first");
+        String id = branches(dir).get("main");
+        assertEquals("", gitlet(dir, "reset", id.substring(0, 6)));
+        // a commit the commit-graph does not list, sharing the first six digits; only its name is read.
+        String other = id.substring(0, 6) + (id.charAt(6) == '0' ? '1' : '0') + id.substring(7);
+        Path loose = dir.resolve(".gitlet/commits").resolve(other.substring(0, 2)).resolve(other.substring(2));
+        Files.createDirectories(loose.getParent());
+        Files.write(loose, new byte[0]);
+        assertEquals("Ambiguous commit id.\n", gitlet(dir, "reset", id.substring(0, 6)));
+        assertEquals("", gitlet(dir, "reset", id.substring(0, 7)));
+    }
+
+    /** start a daemon in DIR and return it once it accepts commands. */
+    private static Process startDaemon(Path dir) throws Exception {
+        Process daemon = start(dir, "gitlet.Main", "daemon");
+        UnixDomainSocketAddress socket = UnixDomainSocketAddress.of(dir.resolve(".gitlet/daemon.sock"));
+        for (int i = 0; i < 200 && daemon.isAlive(); i++) {
+            try {
+                SocketChannel.open(socket).close();
+                return daemon;
+            } catch (IOException excp) {
+                Thread.sleep(50);
+            }
+        }
+        daemon.destroyForcibly();
+        throw new AssertionError("the daemon did not start");
+    }
+
+    @Test
+    public void statusSeesEditsInTheSameTimestampTick() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        Path file = dir.resolve("a.txt");
+        write(dir, "a.txt", "aaaa\n");
+        FileTime mtime = Files.getLastModifiedTime(file);
+        gitlet(dir, "add", "a.txt");
+        assertFalse(gitlet(dir, "status").contains("a.txt (modified)"));
+        // same size, same inode and the same mtime: only the contents tell the versions apart.
+        write(dir, "a.txt", "bbbb\n");
+        Files.setLastModifiedTime(file, mtime);
+        assertTrue(gitlet(dir, "status").contains("a.txt (modified)"));
+        gitlet(dir, "commit", "a");
+        write(dir, "a.txt", "cccc\n");
+        Files.setLastModifiedTime(file, mtime);
+        assertTrue(gitlet(dir, "status").contains("a.txt (modified)"));
+    }
+
+    @Test
+    public void rmOfADeletedAddedFileOnlyUnstagesIt() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        write(dir, "a.txt", "a\n");
+        gitlet(dir, "add", "a.txt");
+        Files.delete(dir.resolve("a.txt"));
+        assertEquals("", gitlet(dir, "rm", "a.txt"));
+        String status = gitlet(dir, "status");
+        assertFalse(status, status.contains("a.txt"));
+        assertEquals("No reason to remove the file.\n", gitlet(dir, "rm", "a.txt"));
+        assertEquals("No changes added to the commit.\n", gitlet(dir, "commit", "nothing"));
+    }
+
+    @Test
+    public void addStagesSeveralPathsAndNestedFilesUnderDot() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        Files.createDirectories(dir.resolve("src/main"));
+        write(dir, "a.txt", "a\n");
+        write(dir, "b.txt", "b\n");
+        write(dir, "src/c.txt", "c\n");
+        assertEquals("", gitlet(dir, "add", "a.txt", "src/c.txt"));
+        assertTrue(gitlet(dir, "status").contains("=== Staged Files ===\na.txt\nsrc/c.txt\n\n"));
+        assertEquals("File does not exist.\n", gitlet(dir, "add", "b.txt", "missing.txt"));
+        gitlet(dir, "commit", "two files");
+        write(dir, "a.txt", "a, edited\n");
+        write(dir, "src/main/d.txt", "d\n");
+        assertEquals("", gitlet(dir, "add", "."));
+        // the unchanged src/c.txt is not staged again, the new nested file and the untracked b.txt are.
+        String status = gitlet(dir, "status");
+        assertTrue(status, status.contains("=== Staged Files ===\na.txt\nb.txt\nsrc/main/d.txt\n\n"));
+        assertTrue(status, status.contains("=== Untracked Files ===\n\n"));
+    }
+
+    @Test
+    public void mergeCommitTracksTheConflictResult() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        write(dir, "f.txt", "base\n");
+        gitlet(dir, "add", "f.txt");
+        gitlet(dir, "commit", "base");
+        gitlet(dir, "branch", "other");
+        write(dir, "f.txt", "ours\n");
+        gitlet(dir, "add", "f.txt");
+        gitlet(dir, "commit", "ours");
+        gitlet(dir, "switch", "other");
+        write(dir, "f.txt", "theirs\n");
+        gitlet(dir, "add", "f.txt");
+        gitlet(dir, "commit", "theirs");
+        gitlet(dir, "switch", "main");
+        assertEquals("Encountered a merge conflict.\n", gitlet(dir, "merge", "other"));
+        String merged = "<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n";
+        assertEquals(merged, Files.readString(dir.resolve("f.txt")));
+        assertFalse(gitlet(dir, "status").contains("f.txt"));
+        write(dir, "f.txt", "edited\n");
+        gitlet(dir, "restore", branches(dir).get("main"), "--", "f.txt");
+        assertEquals(merged, Files.readString(dir.resolve("f.txt")));
+    }
+
+    @Test
+    public void treesShareUnchangedDirectories() throws Exception {
+        File trees = Files.createDirectory(scratch().resolve("trees")).toFile();
+        Map<String, String> files = new TreeMap<>(Map.of("top.txt", Utils.sha1("top"), "src/a.txt", Utils.sha1("a"),
+                "src/main/b.txt", Utils.sha1("b"), "doc/r.txt", Utils.sha1("r")));
+        String root = Tree.writeFiles(trees, files);
+        assertEquals(files, Tree.files(trees, root));
+        assertEquals(Utils.sha1("b"), Tree.lookup(trees, root, "src/main/b.txt"));
+        assertNull(Tree.lookup(trees, root, "src/main"));
+        assertNull(Tree.lookup(trees, root, "src/c.txt"));
+        assertNull(Tree.lookup(trees, root, "top.txt/a.txt"));
+        int stored = ObjectStore.ids(trees).size();
+        String changed = Tree.update(trees, root, Map.of("src/main/b.txt", Utils.sha1("b2")));
+        // only src/main, src and the root are new; doc is the tree it was.
+        assertEquals(stored + 3, ObjectStore.ids(trees).size());
+        assertEquals(Tree.read(trees, root).get("doc"), Tree.read(trees, changed).get("doc"));
+        assertEquals(Map.of("src/main/b.txt", Utils.sha1("b2")), Tree.diff(trees, root, changed));
+        assertEquals(Map.of(), Tree.diff(trees, changed, changed));
+        Map<String, String> removal = new HashMap<>();
+        removal.put("doc/r.txt", null);
+        String removed = Tree.update(trees, changed, removal);
+        assertFalse(Tree.read(trees, removed).containsKey("doc"));
+        assertEquals(removal, Tree.diff(trees, changed, removed));
+        // a tree's id only depends on the files under it, however it was built.
+        assertEquals(removed, Tree.writeFiles(trees, Tree.files(trees, removed)));
+        removal.put("top.txt", null);
+        removal.put("src/a.txt", null);
+        removal.put("src/main/b.txt", null);
+        assertEquals(Tree.write(trees, new TreeMap<>()), Tree.update(trees, changed, removal));
+    }
+
+    /** the one test of the object store through the command line: every kind of object and index
+     *  written by commits, and read back by later commands in new JVMs. */
+    @Test
+    public void commandsRoundTripThroughTheObjectStore() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        Files.createDirectories(dir.resolve("src"));
+        Files.createDirectories(dir.resolve("doc"));
+        write(dir, "src/a.txt", "a\n");
+        write(dir, "doc/r.txt", "r\n");
+        write(dir, "top.txt", "top\n");
+        gitlet(dir, "add", ".");
+        gitlet(dir, "commit", "first");
+        String first = branches(dir).get("main");
+        gitlet(dir, "branch", "other");
+        write(dir, "doc/r.txt", "changed\n");
+        gitlet(dir, "add", "doc/r.txt");
+        gitlet(dir, "commit", "second");
+        assertEquals("", gitlet(dir, "restore", first, "--", "doc/r.txt"));
+        assertEquals("r\n", Files.readString(dir.resolve("doc/r.txt")));
+        Files.delete(dir.resolve("src/a.txt"));
+        assertEquals("", gitlet(dir, "restore", "--", "src/a.txt"));
+        assertEquals("a\n", Files.readString(dir.resolve("src/a.txt")));
+        assertEquals("File does not exist in that commit.\n", gitlet(dir, "restore", first, "--", "src/c.txt"));
+        gitlet(dir, "restore", "--", "doc/r.txt");
+        assertEquals("", gitlet(dir, "switch", "other"));
+        assertEquals("r\n", Files.readString(dir.resolve("doc/r.txt")));
+        write(dir, "top.txt", "other\n");
+        gitlet(dir, "add", "top.txt");
+        gitlet(dir, "commit", "third");
+        gitlet(dir, "switch", "main");
+        Path graph = dir.resolve(".gitlet/commit-graph");
+        long before = Files.size(graph);
+        // the split point comes from the graph: top.txt changed only on other, so it is taken without a conflict.
+        assertEquals("", gitlet(dir, "merge", "other"));
+        assertTrue(Files.size(graph) > before);
+        assertEquals("other\n", Files.readString(dir.resolve("top.txt")));
+        String log = gitlet(dir, "log");
+        // log follows first parents: the merge, second, first and the initial commit.
+        assertEquals(4, log.split("===").length - 1);
+        Files.delete(graph);
+        assertEquals(log, gitlet(dir, "log"));
+        assertEquals("", gitlet(dir, "commit-graph", "write"));
+        assertEquals(log, gitlet(dir, "log"));
+        assertEquals("Incorrect operands.\n", gitlet(dir, "log", "--since", "yesterday"));
+        for (Path object : looseObjects(dir)) {
+            assertEquals(2, object.getParent().getFileName().toString().length());
+            assertEquals(Utils.UID_LENGTH - 2, object.getFileName().toString().length());
+        }
+        assertEquals("Moved 0 loose objects into fan-out directories.\n", gitlet(dir, "migrate"));
+        String merge = branches(dir).get("main");
+        assertEquals(merge + "\n\n", gitlet(dir, "find", "Merged other into main."));
+        assertEquals("", gitlet(dir, "message-index", "write"));
+        assertEquals(found(first), gitlet(dir, "find", "--regex", "^fir"));
+        assertEquals("Invalid pattern.\n", gitlet(dir, "find", "--regex", "("));
+        String verified = "The catalog matches the object store.\n";
+        assertEquals(verified, gitlet(dir, "catalog", "verify"));
+        String globalLog = gitlet(dir, "global-log");
+        assertEquals(5, globalLog.split("===").length - 1);
+        assertTrue(globalLog.contains("commit " + merge + "\nMerge: "));
+        Files.delete(dir.resolve(".gitlet/catalog"));
+        assertEquals(sortedLines(globalLog), sortedLines(gitlet(dir, "global-log")));
+        assertEquals(verified, gitlet(dir, "catalog", "verify"));
+    }
+
+    /** return a commit-graph with BASE as its sorted base, and TAIL appended one by one as commit does. */
+    private static CommitGraph graph(List<CommitGraph.Node> base, CommitGraph.Node... tail) {
+        byte[] bytes = CommitGraph.encode(new ArrayList<>(base)).array();
+        CommitGraph graph = new CommitGraph(ByteBuffer.wrap(bytes));
+        for (CommitGraph.Node node : tail) {
+            ByteBuffer record = graph.tailRecord(node);
+            byte[] grown = Arrays.copyOf(bytes, bytes.length + record.remaining());
+            record.get(grown, bytes.length, record.remaining());
+            bytes = grown;
+            graph = new CommitGraph(ByteBuffer.wrap(bytes));
+        }
+        return graph;
+    }
+
+    @Test
+    public void commitGraphAnswersFromBaseAndTail() {
+        String a = Utils.sha1("a");
+        String b = Utils.sha1("b");
+        String c = Utils.sha1("c");
+        String d = Utils.sha1("d");
+        String e = Utils.sha1("e");
+        List<CommitGraph.Node> base = List.of(new CommitGraph.Node(a, null, null, 0, Utils.sha1("tree")),
+                new CommitGraph.Node(b, a, null, 10, null), new CommitGraph.Node(c, a, null, 20, null));
+        CommitGraph.Node merge = new CommitGraph.Node(d, b, c, 30, null);
+        CommitGraph.Node child = new CommitGraph.Node(e, d, null, 40, null);
+        List<CommitGraph.Node> all = new ArrayList<>(base);
+        all.add(merge);
+        all.add(child);
+        // the same history, with the last two commits appended to the tail or merged into the base.
+        for (CommitGraph graph : List.of(graph(base, merge, child), graph(all))) {
+            assertEquals(5, graph.size());
+            for (String id : List.of(a, b, c, d, e)) {
+                assertEquals(id, graph.idAt(graph.find(id)));
+            }
+            assertEquals(CommitDag.NONE, graph.find(Utils.sha1("z")));
+            assertEquals(CommitDag.NONE, graph.find(d.substring(0, 8)));
+            assertEquals(CommitDag.NONE, graph.parentAt(graph.find(a)));
+            assertEquals(graph.find(a), graph.parentAt(graph.find(c)));
+            assertEquals(graph.find(b), graph.parentAt(graph.find(d)));
+            assertEquals(graph.find(c), graph.secondParentAt(graph.find(d)));
+            assertEquals(CommitDag.NONE, graph.secondParentAt(graph.find(e)));
+            assertEquals(List.of(1, 2, 2, 3, 4), List.of(graph.generationAt(graph.find(a)),
+                    graph.generationAt(graph.find(b)), graph.generationAt(graph.find(c)),
+                    graph.generationAt(graph.find(d)), graph.generationAt(graph.find(e))));
+            assertEquals(30L, graph.timeAt(graph.find(d)));
+            assertEquals(Utils.sha1("tree"), graph.treeAt(graph.find(a)));
+            assertNull(graph.treeAt(graph.find(e)));
+            assertEquals(List.of(e), graph.matches(e.substring(0, 6), 10));
+            assertEquals(5, graph.matches("", 10).size());
+            assertNull(graph.tailRecord(new CommitGraph.Node(Utils.sha1("f"), Utils.sha1("missing"), null, 50, null)));
+        }
+    }
+
+    @Test
+    public void looseObjectsMoveIntoFanOutDirectories() throws Exception {
+        File blobs = Files.createDirectory(scratch().resolve("blobs")).toFile();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ids.add(Utils.sha1("object " + i));
+        }
+        ids.sort(null);
+        // new objects go to fan-out directories, and those of an older repository lie flat in the kind directory.
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            byte[] content = ("object " + i).getBytes(StandardCharsets.UTF_8);
+            if (i % 2 == 0) {
+                ObjectStore.write(blobs, id, content);
+                File loose = Utils.join(blobs, id.substring(0, 2), id.substring(2));
+                assertEquals(loose, ObjectStore.looseFile(blobs, id));
+                assertTrue(loose.isFile());
+            } else {
+                Files.write(blobs.toPath().resolve(id), content);
+            }
+        }
+        // a flat copy of an object that was written again since, and a file that is not an object.
+        Files.write(blobs.toPath().resolve(ids.get(0)), "object 0".getBytes(StandardCharsets.UTF_8));
+        Files.write(blobs.toPath().resolve("tmp-1"), new byte[1]);
+        for (int pass = 0; pass < 2; pass++) {
+            assertEquals(ids, ObjectStore.ids(blobs));
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                assertTrue(ObjectStore.contains(blobs, id));
+                assertEquals("object " + i, new String(ObjectStore.read(blobs, id), StandardCharsets.UTF_8));
+                assertEquals(List.of(id), ObjectStore.matches(blobs, id.substring(0, 7), 10));
+            }
+            assertEquals(pass == 0 ? 4 : 0, ObjectStore.migrate(blobs));
+        }
+        for (String id : ids) {
+            assertTrue(ObjectStore.looseFile(blobs, id).isFile());
+            assertFalse(Utils.join(blobs, id).exists());
+        }
+        assertTrue(Utils.join(blobs, "tmp-1").isFile());
+    }
+
+    /** return the lines of OUTPUT in order, to compare listings that may come in another order. */
+    private static List<String> sortedLines(String output) {
+        List<String> lines = new ArrayList<>(Arrays.asList(output.split("\n")));
+        lines.sort(null);
+        return lines;
+    }
+
+    /** return what find prints for IDS. */
+    private static String found(String... ids) {
+        return String.join("\n", new TreeSet<>(Arrays.asList(ids))) + "\n\n";
+    }
+
+    /** return a message index with BASE as its base, and TAIL appended one by one as commit does. */
+    private static MessageIndex messageIndex(List<MessageIndex.Record> base, MessageIndex.Record... tail) {
+        byte[] bytes = MessageIndex.encode(base).array();
+        for (MessageIndex.Record record : tail) {
+            ByteBuffer appended = MessageIndex.tailRecord(record);
+            byte[] grown = Arrays.copyOf(bytes, bytes.length + appended.remaining());
+            appended.get(grown, bytes.length, appended.remaining());
+            bytes = grown;
+        }
+        return new MessageIndex(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void messageIndexFindsCommitsInBaseAndTail() {
+        String parserBug = Utils.sha1("1");
+        String parserTests = Utils.sha1("2");
+        String mergeFix = Utils.sha1("3");
+        String cleanup = Utils.sha1("4");
+        List<MessageIndex.Record> base = List.of(new MessageIndex.Record(parserBug, "fix parser bug"),
+                new MessageIndex.Record(parserTests, "Add parser tests"), new MessageIndex.Record(mergeFix, "fix merge"));
+        MessageIndex.Record later = new MessageIndex.Record(cleanup, "parser cleanup");
+        List<MessageIndex.Record> all = new ArrayList<>(base);
+        all.add(later);
+        // the same commits, with the last one appended to the tail or merged into the base.
+        for (MessageIndex index : List.of(messageIndex(base, later), messageIndex(all))) {
+            assertEquals(List.of(mergeFix), index.exact("fix merge"));
+            assertEquals(List.of(cleanup), index.exact("parser cleanup"));
+            assertEquals(List.of(), index.exact("fix"));
+            List<String> parser = new ArrayList<>(List.of(parserBug, parserTests, cleanup));
+            parser.sort(null);
+            assertEquals(parser, index.containing("parser"));
+            assertEquals(parser, index.containing("arse"));
+            assertEquals(List.of(parserTests), index.containing("d parser t"));
+            assertEquals(List.of(), index.containing("parser fix"));
+            List<String> fixes = new ArrayList<>(List.of(parserBug, mergeFix));
+            fixes.sort(null);
+            assertEquals(fixes, index.matching(Pattern.compile("^fix")));
+        }
+        // a record cut short by an interrupted append is not read.
+        byte[] bytes = MessageIndex.encode(base).array();
+        byte[] cut = Arrays.copyOf(bytes, bytes.length + 10);
+        MessageIndex.tailRecord(later).get(cut, bytes.length, 10);
+        assertEquals(List.of(), new MessageIndex(ByteBuffer.wrap(cut)).exact("parser cleanup"));
+    }
+
+    /** return a catalog listing ENTRIES in order, cut short by CUT bytes. */
+    private static Catalog catalog(int cut, Catalog.Entry... entries) {
+        ByteBuffer list = ByteBuffer.allocate(Catalog.HEADER_SIZE + entries.length * Catalog.ENTRY_SIZE);
+        list.position(Catalog.HEADER_SIZE);
+        ByteBuffer messages = ByteBuffer.allocate(Catalog.MESSAGES_HEADER_SIZE + 1024);
+        messages.position(Catalog.MESSAGES_HEADER_SIZE);
+        for (Catalog.Entry entry : entries) {
+            byte[] message = entry.message().getBytes(StandardCharsets.UTF_8);
+            Catalog.putEntry(list, entry, messages.position(), message.length);
+            messages.put(message);
+        }
+        return new Catalog(ByteBuffer.wrap(Arrays.copyOf(list.array(), list.capacity() - cut)), messages);
+    }
+
+    @Test
+    public void catalogEntriesRoundTrip() {
+        String a = Utils.sha1("a");
+        String b = Utils.sha1("b");
+        String c = Utils.sha1("c");
+        Catalog.Entry initial = new Catalog.Entry(a, 0, null, null, "initial commit");
+        Catalog.Entry merge = new Catalog.Entry(b, 20, a, c, "Merged other into main.");
+        Catalog.Entry other = new Catalog.Entry(c, 10, a, null, "\u00e9dit\u00e9 sur other");
+        Catalog catalog = catalog(0, merge, initial, other, merge);
+        assertEquals(4, catalog.size());
+        assertEquals(merge, catalog.entryAt(0));
+        assertEquals(initial, catalog.entryAt(1));
+        assertEquals(other, catalog.entryAt(2));
+        // a commit listed twice is visited once.
+        List<Catalog.Entry> byId = new ArrayList<>();
+        catalog.forEach(false, byId::add);
+        List<Catalog.Entry> expected = new ArrayList<>(List.of(initial, merge, other));
+        expected.sort(Comparator.comparing(Catalog.Entry::id));
+        assertEquals(expected, byId);
+        List<Catalog.Entry> byDate = new ArrayList<>();
+        catalog.forEach(true, byDate::add);
+        assertEquals(List.of(merge, other, initial), byDate);
+        // an entry cut short by an interrupted append is not read.
+        assertEquals(2, catalog(1, initial, other, merge).size());
+    }
+
+    @Test
+    public void logOptionsTakeDaysInTheLocalZone() {
+        TimeZone zone = TimeZone.getDefault();
+        // daylight saving time starts in New York on 2024-03-10, which is 23 hours long there.
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        try {
+            long start = ZonedDateTime.of(2024, 3, 10, 0, 0, 0, 0, ZoneId.of("America/New_York"))
+                    .toInstant().toEpochMilli();
+            Repository.LogOptions day = Repository.LogOptions.parse(
+                    new String[] {"--since", "2024-03-10", "--until", "2024-03-10", "-n", "3", "--oneline"});
+            assertEquals(new Repository.LogOptions(3, start, start + TimeUnit.HOURS.toMillis(23) - 1, true), day);
+            Repository.LogOptions time = Repository.LogOptions.parse(new String[] {"--until", "2024-03-10T12:30:00"});
+            assertEquals(start + TimeUnit.MINUTES.toMillis(11 * 60 + 30), time.until());
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+        assertEquals(new Repository.LogOptions(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, false),
+                Repository.LogOptions.parse(new String[0]));
+        for (String operands : List.of("-n", "-n x", "-n -1", "--since", "--since yesterday",
+                "--until 2024-13-01", "--until 2024-03-10T25:00:00", "--oneline 3", "--graph")) {
+            assertNull(operands, Repository.LogOptions.parse(operands.split(" ")));
+        }
+    }
+
+    /** return what log prints with OPTIONS from HEAD, opening commits from COMMITS and adding their
+     *  ids to OPENED, with GRAPH if it is not null. */
+    private static String log(Repository.LogOptions options, Commit head, CommitGraph graph,
+                              Map<String, Commit> commits, List<String> opened) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        Repository.log(options, head.getId(), graph, id -> {
+            opened.add(id);
+            return commits.get(id);
+        }, writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    /** return a commit-graph of COMMITS. */
+    private static CommitGraph graph(Collection<Commit> commits) {
+        List<CommitGraph.Node> nodes = new ArrayList<>();
+        for (Commit c : commits) {
+            nodes.add(new CommitGraph.Node(c.getId(), c.getParent(), c.getSecondParent(),
+                    c.getTimeStamp().getTime(), null));
+        }
+        return new CommitGraph(CommitGraph.encode(nodes));
+    }
+
+    @Test
+    public void logPrintsTheSameWithAndWithoutTheGraph() {
+        Commit initial = new Commit(new Date(0L), "initial commit");
+        Commit first = new Commit(new Date(1000L), "first", initial, null);
+        Commit side = new Commit(new Date(2000L), "side", initial, null);
+        Commit merge = new Commit(new Date(3000L), "Merged side into main.", first, side);
+        Commit last = new Commit(new Date(4000L), "last\nwith a body", merge, null);
+        Map<String, Commit> commits = new HashMap<>();
+        for (Commit c : List.of(initial, first, side, merge, last)) {
+            commits.put(c.getId(), c);
+        }
+        CommitGraph graph = graph(commits.values());
+        Repository.LogOptions all = Repository.LogOptions.parse(new String[0]);
+        List<String> opened = new ArrayList<>();
+        String full = log(all, last, null, commits, opened);
+        assertEquals(List.of(last.getId(), merge.getId(), first.getId(), initial.getId()), opened);
+        assertEquals(5, full.split("===").length);
+        assertTrue(full.contains("Merge: " + first.getId().substring(0, 7) + " " + side.getId().substring(0, 7)));
+        String oneline = log(new Repository.LogOptions(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, true),
+                last, null, commits, new ArrayList<>());
+        assertEquals(last.getId().substring(0, 7) + " last\n" + merge.getId().substring(0, 7)
+                + " Merged side into main.\n" + first.getId().substring(0, 7) + " first\n"
+                + initial.getId().substring(0, 7) + " initial commit\n", oneline);
+        for (Repository.LogOptions options : List.of(all, new Repository.LogOptions(2, Long.MIN_VALUE, Long.MAX_VALUE,
+                false), new Repository.LogOptions(Integer.MAX_VALUE, 1000L, 3000L, true),
+                new Repository.LogOptions(1, Long.MIN_VALUE, 2000L, false))) {
+            List<String> printed = new ArrayList<>();
+            String withGraph = log(options, last, graph, commits, printed);
+            assertEquals(log(options, last, null, commits, new ArrayList<>()), withGraph);
+            // with the graph, only the printed commits are opened.
+            int lines = options.oneline() ? withGraph.split("\n").length : withGraph.split("===").length - 1;
+            assertEquals(lines, printed.size());
+        }
+    }
+
+    @Test
+    public void logSinceStopsAtTheFirstOlderCommit() {
+        Commit initial = new Commit(new Date(0L), "initial commit");
+        Commit newer = new Commit(new Date(5000L), "newer", initial, null);
+        Commit behind = new Commit(new Date(1000L), "made with a clock behind", newer, null);
+        Commit head = new Commit(new Date(6000L), "head", behind, null);
+        Map<String, Commit> commits = new HashMap<>();
+        for (Commit c : List.of(initial, newer, behind, head)) {
+            commits.put(c.getId(), c);
+        }
+        Repository.LogOptions since = new Repository.LogOptions(Integer.MAX_VALUE, 2000L, Long.MAX_VALUE, true);
+        String expected = head.getId().substring(0, 7) + " head\n";
+        // newer is after 2000 too, but the walk ends at behind.
+        assertEquals(expected, log(since, head, null, commits, new ArrayList<>()));
+        assertEquals(expected, log(since, head, graph(commits.values()), commits, new ArrayList<>()));
+    }
+
+    @Test
+    public void parallelScansMatchSerialScans() throws Exception {
+        File dir = Files.createDirectory(scratch().resolve("commits")).toFile();
+        Random random = new Random(19);
+        List<Commit> all = new ArrayList<>();
+        // more than one batch, with many commits sharing a time so ties are ordered by id.
+        for (int i = 0; i < CommitScan.BATCH_SIZE + 904; i++) {
+            Commit c = new Commit(new Date(random.nextInt(1000)), "commit " + i);
+            ObjectStore.write(dir, c.getId(), Utils.serialize(c));
+            all.add(c);
+        }
+        all.sort(Comparator.comparing(Commit::getId));
+        List<String> byId = all.stream().map(Commit::getId).toList();
+        all.sort(Comparator.comparing(Commit::getTimeStamp).reversed().thenComparing(Commit::getId));
+        List<String> byDate = all.stream().map(Commit::getId).toList();
+        // the times of half the commits come from a graph, and the others are decoded.
+        CommitGraph graph = graph(all.subList(0, all.size() / 2));
+        try (CommitScan serial = new CommitScan(1, dir); CommitScan parallel = new CommitScan(8, dir)) {
+            for (CommitScan scan : List.of(serial, parallel)) {
+                assertEquals(byId, scan.ids(false));
+                assertEquals(byDate, scan.sortByDate(byId, null));
+                assertEquals(byDate, scan.sortByDate(byId, graph));
+                for (List<String> order : List.of(byId, byDate)) {
+                    List<String> seen = new ArrayList<>();
+                    scan.forEach(order, c -> seen.add(c.getId()));
+                    assertEquals(order, seen);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void commandErrorsAreThrownInsteadOfExiting() {
+        GitletException excp = assertThrows(GitletException.class, () -> Main.run(new String[0]));
+        assertEquals("Please enter a command.", excp.getMessage());
+    }
+
+    @Test
+    public void traceReportsItsCountersAsATableOrJson() throws IOException {
+        File file = scratch().resolve("traced").toFile();
+        Commit root = new Commit(new Date(0L), "root");
+        Trace trace = new Trace();
+        trace.run(() -> {
+            Utils.writeContents(file, "12345");
+            Utils.readContents(file);
+            Utils.readContents(file);
+            CommitCache commits = CommitCache.forCommand();
+            commits.put(root);
+            getCommit(root.getId(), commits);
+        });
+        assertEquals(1, trace.calls(Trace.WRITE_CONTENTS));
+        assertEquals(5, trace.bytes(Trace.WRITE_CONTENTS));
+        assertEquals(2, trace.calls(Trace.READ_CONTENTS));
+        assertEquals(10, trace.bytes(Trace.READ_CONTENTS));
+        assertEquals(1, trace.calls(Trace.GET_COMMIT));
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        trace.report(new PrintStream(table, true, StandardCharsets.UTF_8), "status", false);
+        List<String> lines = table.toString(StandardCharsets.UTF_8).lines().toList();
+        // a header, one line per operation, then the commit cache and the wall time.
+        assertEquals(13, lines.size());
+        assertTrue(lines.get(0).matches("operation +calls +ms +bytes"));
+        assertTrue(lines.get(1 + Trace.READ_CONTENTS).matches("readContents +2 +[0-9]+\\.[0-9]{3} +10"));
+        assertTrue(lines.get(1 + Trace.SHA1).matches("sha1 +0 +0\\.000 +0"));
+        assertTrue(lines.get(11).matches("commitCache +1 hits +0 misses"));
+        assertTrue(lines.get(12).matches("wall +[0-9]+\\.[0-9]{3}"));
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        trace.report(new PrintStream(json, true, StandardCharsets.UTF_8), "find \"a b\"", true);
+        List<String> objects = json.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(1, objects.size());
+        String object = objects.get(0);
+        assertTrue(object.startsWith("{\"command\":\"find \\\"a b\\\"\",\"wallNanos\":"));
+        assertTrue(Pattern.compile("\"readContents\":\\{\"calls\":2,\"nanos\":[0-9]+,\"bytes\":10}")
+                .matcher(object).find());
+        assertTrue(object.endsWith("},\"commitCache\":{\"hits\":1,\"misses\":0}}"));
+    }
+
+    @Test
+    public void traceIsReportedWhenTheCommandFails() {
+        PrintStream err = System.err;
+        ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(reported, true, StandardCharsets.UTF_8));
+        try {
+            assertThrows(GitletException.class, () -> Main.run(new String[] {"--trace=json"}));
+        } finally {
+            System.setErr(err);
+        }
+        String object = reported.toString(StandardCharsets.UTF_8);
+        assertTrue(object.startsWith("{\"command\":\"\",\"wallNanos\":"));
+        assertTrue(object.endsWith("\"commitCache\":{\"hits\":0,\"misses\":0}}\n"));
+    }
+
+    @Test
+    public void daemonRunsCommandsLikeMain() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        write(dir, "a.txt", "a\n");
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "first");
+        Process daemon = startDaemon(dir);
+        try {
+            assertEquals("A daemon is already running.\n", gitlet(dir, "daemon"));
+            assertEquals(gitlet(dir, "log"), run(dir, "gitlet.Client", "log"));
+            assertEquals("", run(dir, "gitlet.Client", "branch", "other"));
+            assertEquals("A branch with that name already exists.\n", gitlet(dir, "branch", "other"));
+            write(dir, "a.txt", "changed\n");
+            assertEquals("", run(dir, "gitlet.Client", "add", "a.txt"));
+            assertEquals("", run(dir, "gitlet.Client", "commit", "second"));
+            assertEquals(gitlet(dir, "status"), run(dir, "gitlet.Client", "status"));
+            assertEquals(gitlet(dir, "global-log"), run(dir, "gitlet.Client", "global-log"));
+            assertEquals("", gitlet(dir, "daemon", "stop"));
+            assertTrue(daemon.waitFor(10, TimeUnit.SECONDS));
+        } finally {
+            daemon.destroyForcibly();
+        }
+        assertTrue(Files.notExists(dir.resolve(".gitlet/daemon.sock")));
+        assertEquals("No daemon is running.\n", gitlet(dir, "daemon", "stop"));
+        // with no daemon the client runs the command itself.
+        assertEquals(gitlet(dir, "log"), run(dir, "gitlet.Client", "log"));
+    }
+
+    @Test
+    public void daemonReplacesTheSocketOfAKilledDaemon() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        Process killed = startDaemon(dir);
+        killed.destroyForcibly().waitFor();
+        assertTrue(Files.exists(dir.resolve(".gitlet/daemon.sock")));
+        Process daemon = startDaemon(dir);
+        try {
+            assertEquals("A daemon is already running.\n", gitlet(dir, "daemon"));
+            assertEquals(gitlet(dir, "log"), run(dir, "gitlet.Client", "log"));
+            assertEquals("", gitlet(dir, "daemon", "stop"));
+            assertTrue(daemon.waitFor(10, TimeUnit.SECONDS));
+        } finally {
+            daemon.destroyForcibly();
+        }
+    }
+
+    /** return the ids of the chunks Chunker cuts DATA into. */
+    private static List<String> chunkIds(byte[] data) {
+        List<String> ids = new ArrayList<>();
+        Chunker chunker = new Chunker();
+        int start = 0;
+        for (int cut = chunker.next(data, 0, data.length); cut >= 0; cut = chunker.next(data, cut, data.length - cut)) {
+            ids.add(Blob.chunkId(Arrays.copyOfRange(data, start, cut)));
+            start = cut;
+        }
+        if (start < data.length) {
+            ids.add(Blob.chunkId(Arrays.copyOfRange(data, start, data.length)));
+        }
+        return ids;
+    }
+
+    @Test
+    public void storedBlobsHashAndHoldTheFileInOnePass() throws Exception {
+        Path dir = scratch();
+        File blobs = Files.createDirectory(dir.resolve("blobs")).toFile();
+        byte[] data = new byte[3 * Blob.BUFFER_SIZE + 100];
+        new Random(3).nextBytes(data);
+        File source = dir.resolve("big.bin").toFile();
+        Files.write(source.toPath(), data);
+        for (int level : new int[] {0, 6}) {
+            String id = Blob.store(blobs, source, new Blob.StoreOptions(level, 0, ""));
+            // the id is the hash of the whole file, however many buffers it was read in.
+            assertEquals(sha1Helper(source), id);
+            byte[] record = ObjectStore.read(blobs, id);
+            ByteBuffer header = ByteBuffer.wrap(record, 0, Blob.HEADER_SIZE);
+            assertEquals(level == 0 ? Blob.STORED : Blob.DEFLATED, header.get(4));
+            assertEquals(data.length, header.getLong(5));
+            byte[] body = Arrays.copyOfRange(record, Blob.HEADER_SIZE, record.length);
+            if (level != 0) {
+                body = new InflaterInputStream(new ByteArrayInputStream(body)).readAllBytes();
+            }
+            assertTrue(Arrays.equals(data, body));
+            ObjectStore.forEachId(blobs, stored -> assertEquals(id, stored));
+            ObjectStore.looseFile(blobs, id).delete();
+        }
+        // nothing is left behind but the empty fan-out directory.
+        try (Stream<Path> files = Files.walk(blobs.toPath())) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void storedBlobsRestoreByteForByte() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        gitlet(dir, "config", Config.COMPRESSION, "0");
+        byte[] data = new byte[(1 << 20) + 7];
+        new Random(4).nextBytes(data);
+        Files.write(dir.resolve("big.bin"), data);
+        gitlet(dir, "add", "big.bin");
+        gitlet(dir, "commit", "big");
+        List<Path> blobs = looseObjects(dir, "blobs");
+        assertEquals(1, blobs.size());
+        assertEquals(Blob.STORED, Files.readAllBytes(blobs.get(0))[4]);
+        // copied from the loose object, then from its offset in a pack.
+        for (String step : new String[] {"loose", "repack"}) {
+            if (step.equals("repack")) {
+                assertEquals("", gitlet(dir, "repack"));
+            }
+            Files.write(dir.resolve("big.bin"), new byte[] {1, 2, 3});
+            assertEquals("", gitlet(dir, "restore", "--", "big.bin"));
+            assertTrue(step, Arrays.equals(data, Files.readAllBytes(dir.resolve("big.bin"))));
+        }
+    }
+
+    @Test
+    public void rollingBlockHashMatchesTheBlockHash() {
+        byte[] data = new byte[1000];
+        new Random(6).nextBytes(data);
+        long hash = Delta.blockHash(data, 0);
+        for (int i = 1; i + 16 <= data.length; i++) {
+            hash = Delta.roll(hash, data[i - 1], data[i + 15]);
+            assertEquals(Delta.blockHash(data, i), hash);
+        }
+    }
+
+    @Test
+    public void deltasFindUnalignedCopies() {
+        byte[] base = new byte[256 * 1024];
+        new Random(7).nextBytes(base);
+        // three bytes inserted near the start shift all later blocks off the base's block boundaries.
+        byte[] target = new byte[base.length + 3];
+        System.arraycopy(base, 0, target, 0, 100);
+        System.arraycopy(base, 100, target, 103, base.length - 100);
+        target[base.length / 2] ^= 1;
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length + " byte delta", delta.length < 1024);
+        assertTrue(Arrays.equals(target, Delta.apply(base, delta, target.length)));
+        byte[] shortTarget = {1, 2, 3};
+        assertTrue(Arrays.equals(shortTarget, Delta.apply(base, Delta.create(base, shortTarget), 3)));
+    }
+
+    @Test
+    public void storesAreChargedTheBuffersTheyHold() throws Exception {
+        File missing = new File("missing.txt");
+        assertEquals(2 * Blob.BUFFER_SIZE, Blob.footprint(missing, new Blob.StoreOptions(0, 0, "")));
+        int deflated = Blob.footprint(missing, new Blob.StoreOptions(6, 0, ""));
+        assertEquals(3 * Blob.BUFFER_SIZE + Blob.DEFLATER_STATE, deflated);
+        assertEquals(2 * Blob.BUFFER_SIZE, Blob.footprint(new File("photo.jpg"), new Blob.StoreOptions(6, 0, "jpg")));
+        File big = scratch().resolve("big.bin").toFile();
+        Files.write(big.toPath(), new byte[1 << 20]);
+        assertTrue(Blob.footprint(big, new Blob.StoreOptions(6, 1, "")) > deflated + 3 * Chunker.MAX_SIZE);
+    }
+
+    @Test
+    public void parallelFilesStayWithinTheBudget() {
+        Map<String, File> files = new TreeMap<>();
+        for (int i = 0; i < 200; i++) {
+            files.put("f" + i, new File("f" + i));
+        }
+        for (int cost : new int[] {1 << 20, Integer.MAX_VALUE}) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger most = new AtomicInteger();
+            Map<String, String> ids;
+            try (ParallelHasher hasher = new ParallelHasher(8, 4 << 20)) {
+                ids = hasher.run(files, f -> cost, f -> {
+                    most.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                    running.decrementAndGet();
+                    return f.getName();
+                });
+            }
+            assertEquals(files.keySet(), ids.keySet());
+            ids.forEach((name, id) -> assertEquals(name, id));
+            // a file costing more than the budget is charged the whole budget, so it runs alone.
+            assertTrue(most.get() + " files at once", most.get() <= (cost == Integer.MAX_VALUE ? 1 : 4));
+        }
+    }
+
+    @Test
+    public void chunkBoundariesSurviveInserts() {
+        byte[] data = new byte[4 << 20];
+        new Random(1).nextBytes(data);
+        List<String> before = chunkIds(data);
+        assertTrue(before.size() > 20);
+        byte[] inserted = new byte[data.length + 100];
+        int at = data.length / 2;
+        System.arraycopy(data, 0, inserted, 0, at);
+        Arrays.fill(inserted, at, at + 100, (byte) 'x');
+        System.arraycopy(data, at, inserted, at + 100, data.length - at);
+        List<String> after = chunkIds(inserted);
+        List<String> added = new ArrayList<>(after);
+        added.removeAll(before);
+        // only the chunk holding the insert changes, or the two around a boundary it moved.
+        assertTrue(added.size() + " new chunks", added.size() <= 2);
+        List<String> kept = new ArrayList<>(before);
+        kept.removeAll(after);
+        assertTrue(kept.size() + " lost chunks", kept.size() <= 2);
+        byte[] appended = Arrays.copyOf(data, data.length + 1000);
+        List<String> grown = chunkIds(appended);
+        assertEquals(before.subList(0, before.size() - 1), grown.subList(0, before.size() - 1));
+    }
+
+    @Test
+    public void chunkIdsDifferFromBlobIds() {
+        byte[] bytes = "contents".getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(Utils.sha1((Object) bytes), Blob.chunkId(bytes));
+        assertNotEquals(Utils.sha1("chunk", bytes), Blob.chunkId(bytes));
+        assertEquals(Blob.chunkId(bytes), Blob.chunkId(bytes.clone()));
+    }
+
+    @Test
+    public void chunkedFilesStoreOnlyTheChangedChunks() throws Exception {
+        Path dir = scratch();
+        gitlet(dir, "init");
+        gitlet(dir, "config", Config.CHUNK_THRESHOLD, "65536");
+        byte[] data = new byte[2 << 20];
+        new Random(2).nextBytes(data);
+        Files.write(dir.resolve("big.bin"), data);
+        gitlet(dir, "add", "big.bin");
+        gitlet(dir, "commit", "big");
+        String first = branches(dir).get("main");
+        int blobs = looseObjects(dir).size();
+        byte[] edited = Arrays.copyOf(data, data.length);
+        edited[data.length / 2] ^= 1;
+        Files.write(dir.resolve("big.bin"), edited);
+        gitlet(dir, "add", "big.bin");
+        assertEquals("", gitlet(dir, "commit", "edit"));
+        // one changed chunk, its manifest, a tree and a commit.
+        assertTrue(looseObjects(dir).size() - blobs <= 4);
+        assertEquals("", gitlet(dir, "restore", first, "--", "big.bin"));
+        assertTrue(Arrays.equals(data, Files.readAllBytes(dir.resolve("big.bin"))));
+    }
+
+    /** an in-memory history for merge base tests, where commit i was made at time i. */
+    private static class ArrayDag implements CommitDag {
+        private int[] parents = new int[16];
+        private int[] secondParents = new int[16];
+        private int[] generations = new int[16];
+        private int size;
+
+        int add(int parent, int secondParent) {
+            if (size == parents.length) {
+                parents = Arrays.copyOf(parents, size * 2);
+                secondParents = Arrays.copyOf(secondParents, size * 2);
+                generations = Arrays.copyOf(generations, size * 2);
+            }
+            parents[size] = parent;
+            secondParents[size] = secondParent;
+            generations[size] = 1 + Math.max(parent == NONE ? 0 : generations[parent],
+                    secondParent == NONE ? 0 : generations[secondParent]);
+            return size++;
+        }
+
+        /** add a line of N commits on top of FROM and return the last one. */
+        int line(int from, int n) {
+            int head = from;
+            for (int i = 0; i < n; i++) {
+                head = add(head, NONE);
+            }
+            return head;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int parentAt(int pos) {
+            return parents[pos];
+        }
+
+        public int secondParentAt(int pos) {
+            return secondParents[pos];
+        }
+
+        public int generationAt(int pos) {
+            return generations[pos];
+        }
+
+        public long timeAt(int pos) {
+            return pos;
+        }
+    }
+
+    @Test
+    public void mergeBaseOfRecentSplitInDeepHistory() {
+        ArrayDag dag = new ArrayDag();
+        int split = dag.line(dag.add(CommitDag.NONE, CommitDag.NONE), 200_000);
+        int main = dag.line(split, 1);
+        int topic = dag.line(split, 3);
+        assertEquals(List.of(split), MergeHelper.mergeBases(dag, main, topic));
+        for (int i = 0; i < 1000; i++) {
+            MergeHelper.mergeBases(dag, main, topic);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            MergeHelper.mergeBases(dag, main, topic);
+        }
+        long average = (System.nanoTime() - start) / 1000;
+        System.out.println("merge base of a 200k commit history: " + average + " ns");
+        assertTrue("merge base took " + average + " ns", average < 1_000_000);
+    }
+
+    @Test
+    public void mergeBaseOfAncestorIsTheAncestor() {
+        ArrayDag dag = new ArrayDag();
+        int root = dag.add(CommitDag.NONE, CommitDag.NONE);
+        int old = dag.line(root, 10);
+        int head = dag.line(old, 100_000);
+        assertEquals(List.of(old), MergeHelper.mergeBases(dag, head, old));
+        assertEquals(List.of(old), MergeHelper.mergeBases(dag, old, head));
+        assertEquals(List.of(head), MergeHelper.mergeBases(dag, head, head));
+    }
+
+    @Test
+    public void mergeBasesOfCrissCross() {
+        ArrayDag dag = new ArrayDag();
+        int root = dag.line(dag.add(CommitDag.NONE, CommitDag.NONE), 100_000);
+        int a = dag.line(root, 2);
+        int b = dag.line(root, 3);
+        // each side merges the other, then both go on.
+        int a2 = dag.add(a, b);
+        int b2 = dag.add(b, a);
+        int left = dag.line(a2, 2);
+        int right = dag.line(b2, 1);
+        List<Integer> bases = MergeHelper.mergeBases(dag, left, right);
+        assertEquals(2, bases.size());
+        assertEquals(new HashSet<>(List.of(a, b)), new HashSet<>(bases));
+        // b was made after a, so it comes first.
+        assertEquals(b, (int) bases.get(0));
+    }
+
+    @Test
+    public void mergeBaseSkipsRedundantCandidates() {
+        ArrayDag dag = new ArrayDag();
+        int root = dag.add(CommitDag.NONE, CommitDag.NONE);
+        int base = dag.line(root, 5);
+        int side = dag.line(base, 1);
+        // the first side merges an older commit, which is also a common ancestor but below base.
+        int older = dag.parentAt(base);
+        int merged = dag.add(side, older);
+        int other = dag.line(base, 4);
+        assertEquals(List.of(base), MergeHelper.mergeBases(dag, merged, other));
+    }
+
+    @Test
+    public void mergeBaseOfUnrelatedHistoriesIsEmpty() {
+        ArrayDag dag = new ArrayDag();
+        int one = dag.line(dag.add(CommitDag.NONE, CommitDag.NONE), 10);
+        int two = dag.line(dag.add(CommitDag.NONE, CommitDag.NONE), 10);
+        assertTrue(MergeHelper.mergeBases(dag, one, two).isEmpty());
+    }
 }
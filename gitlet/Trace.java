@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** The counters of one command run with the global --trace flag: how often each traced operation
+ *  ran, the time spent in it and the bytes it read, wrote or hashed.
+ *  `java gitlet.Main --trace COMMAND ...` prints them as a table to stderr when the command ends,
+ *  `--trace=json` as one JSON object per command for log pipelines. Times are inclusive, so
+ *  getCommit includes the deserialize under it and writeObject the writeContents under it.
+ *  The hits and misses of the commit cache of the command are printed after the operations.
+ *  Main creates a Trace per command and hands it to the thread running the command, a CommandThread
+ *  or the Daemon serving it, which passes it on to the workers of the pools the command starts.
+ *  The static methods count against the Trace of the current thread, so untraced commands only
+ *  pay for an instanceof per operation.
+ *  @author Haichao
+ */
+public class Trace {
+
+    public static final int READ_OBJECT = 0;
+
+    public static final int WRITE_OBJECT = 1;
+
+    public static final int READ_CONTENTS = 2;
+
+    public static final int WRITE_CONTENTS = 3;
+
+    public static final int SERIALIZE = 4;
+
+    public static final int DESERIALIZE = 5;
+
+    public static final int PLAIN_FILENAMES_IN = 6;
+
+    public static final int GET_COMMIT = 7;
+
+    public static final int FIND_BLOB = 8;
+
+    public static final int SHA1 = 9;
+
+    private static final int OPERATIONS = 10;
+
+    /** a thread running a traced command, or working for one. */
+    public interface Holder {
+        /** return the trace of the command this thread runs, or null if it is not traced. */
+        Trace trace();
+    }
+
+    /** per operation: calls, nanoseconds and bytes; updated from the threads of parallel hashing and scans. */
+    private final AtomicLongArray counters = new AtomicLongArray(3 * OPERATIONS);
+
+    private long started;
+
+    /** lookups in the commit cache of the command. */
+    private long cacheHits;
+
+    private long cacheMisses;
+
+    /** return the name of operation OP, as printed. */
+    private static String label(int op) {
+        return switch (op) {
+            case READ_OBJECT -> "readObject";
+            case WRITE_OBJECT -> "writeObject";
+            case READ_CONTENTS -> "readContents";
+            case WRITE_CONTENTS -> "writeContents";
+            case SERIALIZE -> "serialize";
+            case DESERIALIZE -> "deserialize";
+            case PLAIN_FILENAMES_IN -> "plainFilenamesIn";
+            case GET_COMMIT -> "getCommit";
+            case FIND_BLOB -> "findBlob";
+            default -> "sha1";
+        };
+    }
+
+    /** return the trace of the command running on this thread, or null. */
+    public static Trace current() {
+        return Thread.currentThread() instanceof Holder holder ? holder.trace() : null;
+    }
+
+    /** return a start time to pass to end(), or 0 if the current command is not traced. */
+    public static long start() {
+        return current() == null ? 0 : System.nanoTime();
+    }
+
+    /** count one call of OP that began at START and moved BYTES bytes. */
+    public static void end(int op, long start, long bytes) {
+        Trace trace = start == 0 ? null : current();
+        if (trace != null) {
+            trace.add(op, System.nanoTime() - start, bytes);
+        }
+    }
+
+    /** return MD, counting the bytes it hashes and the time it takes if the current command is traced. */
+    public static MessageDigest digest(MessageDigest md) {
+        Trace trace = current();
+        return trace == null ? md : new CountingDigest(md, trace);
+    }
+
+    /** return a pool of THREADS threads whose workers count against the trace of the current command. */
+    public static ForkJoinPool pool(int threads) {
+        Trace trace = current();
+        if (trace == null) {
+            return new ForkJoinPool(threads);
+        }
+        return new ForkJoinPool(threads, pool -> new Worker(pool, trace), null, false);
+    }
+
+    private void add(int op, long nanos, long bytes) {
+        counters.incrementAndGet(3 * op);
+        counters.addAndGet(3 * op + 1, nanos);
+        counters.addAndGet(3 * op + 2, bytes);
+    }
+
+    /** run COMMAND, counting against this trace, on the thread of the Daemon serving it or of the
+     *  command, or else on a new CommandThread. */
+    public void run(Runnable command) {
+        started = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Daemon daemon) {
+            // the daemon's cache outlives the command, so only its lookups since now count.
+            CommitCache commits = daemon.commits();
+            long hits = commits.hits();
+            long misses = commits.misses();
+            daemon.trace(this);
+            try {
+                command.run();
+            } finally {
+                daemon.trace(null);
+                cacheHits = commits.hits() - hits;
+                cacheMisses = commits.misses() - misses;
+            }
+        } else if (thread instanceof CommandThread commandThread) {
+            commandThread.trace(this);
+            try {
+                command.run();
+            } finally {
+                commandThread.trace(null);
+                CommitCache commits = commandThread.usedCommits();
+                cacheHits = commits == null ? 0 : commits.hits();
+                cacheMisses = commits == null ? 0 : commits.misses();
+            }
+        } else {
+            CommandThread.execute(() -> run(command));
+        }
+    }
+
+    public long calls(int op) {
+        return counters.get(3 * op);
+    }
+
+    public long nanos(int op) {
+        return counters.get(3 * op + 1);
+    }
+
+    public long bytes(int op) {
+        return counters.get(3 * op + 2);
+    }
+
+    /** print the counters of COMMAND to OUT, as JSON if JSON is set. */
+    public void report(PrintStream out, String command, boolean json) {
+        long wall = System.nanoTime() - started;
+        if (json) {
+            StringBuilder line = new StringBuilder("{\"command\":\"").append(escape(command))
+                    .append("\",\"wallNanos\":").append(wall).append(",\"operations\":{");
+            for (int op = 0; op < OPERATIONS; op++) {
+                line.append(op == 0 ? "" : ",").append('"').append(label(op)).append("\":{\"calls\":")
+                        .append(calls(op)).append(",\"nanos\":").append(nanos(op))
+                        .append(",\"bytes\":").append(bytes(op)).append('}');
+            }
+            line.append("},\"commitCache\":{\"hits\":").append(cacheHits)
+                    .append(",\"misses\":").append(cacheMisses).append('}');
+            out.println(line.append('}'));
+        } else {
+            out.printf("%-18s %10s %12s %14s%n", "operation", "calls", "ms", "bytes");
+            for (int op = 0; op < OPERATIONS; op++) {
+                out.printf("%-18s %10d %12.3f %14d%n", label(op), calls(op), nanos(op) / 1e6, bytes(op));
+            }
+            out.printf("%-18s %10s %12s%n", "commitCache", cacheHits + " hits", cacheMisses + " misses");
+            out.printf("%-18s %10s %12.3f%n", "wall", "", wall / 1e6);
+        }
+        out.flush();
+    }
+
+    private static String escape(String s) {
+        StringBuilder result = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** a pool thread working for a traced command. */
+    private static class Worker extends ForkJoinWorkerThread implements Holder {
+
+        private final Trace trace;
+
+        Worker(ForkJoinPool pool, Trace trace) {
+            super(pool);
+            this.trace = trace;
+        }
+
+        @Override
+        public Trace trace() {
+            return trace;
+        }
+    }
+
+    /** a MessageDigest that counts every update as SHA1 and passes it on to another one. */
+    private static class CountingDigest extends MessageDigest {
+
+        private final MessageDigest md;
+
+        private final Trace trace;
+
+        CountingDigest(MessageDigest md, Trace trace) {
+            super(md.getAlgorithm());
+            this.md = md;
+            this.trace = trace;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            long start = System.nanoTime();
+            md.update(input);
+            trace.add(SHA1, System.nanoTime() - start, 1);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            long start = System.nanoTime();
+            md.update(input, offset, len);
+            trace.add(SHA1, System.nanoTime() - start, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            return md.digest();
+        }
+
+        @Override
+        protected void engineReset() {
+            md.reset();
+        }
+    }
+}
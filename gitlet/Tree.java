@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Repository.TREES_DIR;
+
+/** A snapshot of one directory: its entries in name order, each either a file with its blob id
+ *  or a subdirectory with the id of its own tree. The id of a tree is the sha1 of its stored bytes,
+ *  so directories with the same content share one tree object, and two snapshots can be compared
+ *  without looking inside the subtrees whose ids are equal.
+ *  Layout (big-endian): magic "glt", format version, entry count, then per entry:
+ *      kind (BLOB or TREE), name length (short), name (UTF-8), raw id (20 bytes).
+ *  Paths of tracked files are relative to the working directory and separated by '/'.
+ *  @author Haichao
+ */
+public class Tree {
+
+    static final byte VERSION = 1;
+
+    static final byte BLOB = 0;
+
+    static final byte TREE = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /** one entry of a tree: a BLOB or a TREE and its id. */
+    public record Entry(byte kind, String id) {
+
+        public boolean isTree() {
+            return kind == TREE;
+        }
+    }
+
+    /** return the entries of tree ID, by name. */
+    public static TreeMap<String, Entry> read(String id) {
+        return read(TREES_DIR, id);
+    }
+
+    /** the methods taking DIR keep their trees in DIR rather than TREES_DIR. */
+    static TreeMap<String, Entry> read(File dir, String id) {
+        byte[] content = ObjectStore.read(dir, id);
+        if (content == null) {
+            throw new GitletException("No tree with that id exists.");
+        }
+        ByteBuffer in = ByteBuffer.wrap(content);
+        if (content.length < HEADER_SIZE || in.get() != 'g' || in.get() != 'l' || in.get() != 't'
+                || in.get() != VERSION) {
+            throw new GitletException("Corrupt tree " + id);
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        int count = in.getInt();
+        byte[] raw = new byte[PackIndex.RAW_ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            byte kind = in.get();
+            byte[] name = new byte[in.getShort() & 0xffff];
+            in.get(name);
+            in.get(raw);
+            entries.put(new String(name, StandardCharsets.UTF_8), new Entry(kind, PackIndex.toHex(raw)));
+        }
+        return entries;
+    }
+
+    /** store ENTRIES as a tree unless it already exists, and return its id. */
+    public static String write(SortedMap<String, Entry> entries) {
+        return write(TREES_DIR, entries);
+    }
+
+    static String write(File dir, SortedMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(new byte[] {'g', 'l', 't', VERSION});
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(entry.getValue().kind());
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(PackIndex.toRaw(entry.getValue().id()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        byte[] content = bytes.toByteArray();
+        MessageDigest md = HelperMethods.sha1Digest();
+        String id = PackIndex.toHex(md.digest(content));
+        dir.mkdir();
+        ObjectStore.write(dir, id, content);
+        return id;
+    }
+
+    /** store FILES, path : blob id, as a tree per directory and return the id of the root tree. */
+    public static String writeFiles(Map<String, String> files) {
+        return writeFiles(TREES_DIR, files);
+    }
+
+    static String writeFiles(File dir, Map<String, String> files) {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        Map<String, Map<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String path = file.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                entries.put(path, new Entry(BLOB, file.getValue()));
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), file.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> subdir : subdirs.entrySet()) {
+            entries.put(subdir.getKey(), new Entry(TREE, writeFiles(dir, subdir.getValue())));
+        }
+        return write(dir, entries);
+    }
+
+    /** apply CHANGES, path : new blob id or null to remove the file, to tree ID and return the new root id.
+     *  only the trees on the paths to the changed files are read and written again. */
+    public static String update(String id, Map<String, String> changes) {
+        return update(TREES_DIR, id, changes);
+    }
+
+    static String update(File dir, String id, Map<String, String> changes) {
+        String result = updateDir(dir, id, changes);
+        return result == null ? write(dir, new TreeMap<>()) : result;
+    }
+
+    /** as update, but return null if the directory ends up empty. */
+    private static String updateDir(File dir, String id, Map<String, String> changes) {
+        TreeMap<String, Entry> entries = id == null ? new TreeMap<>() : read(dir, id);
+        Map<String, Map<String, String>> subdirs = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                subdirs.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(BLOB, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> subdir : subdirs.entrySet()) {
+            Entry old = entries.get(subdir.getKey());
+            String subtree = updateDir(dir, old != null && old.isTree() ? old.id() : null, subdir.getValue());
+            if (subtree != null) {
+                entries.put(subdir.getKey(), new Entry(TREE, subtree));
+            } else if (old != null && old.isTree()) {
+                entries.remove(subdir.getKey());
+            }
+        }
+        return entries.isEmpty() ? null : write(dir, entries);
+    }
+
+    /** return the blob id of the file at PATH under tree ID, or null if there is none.
+     *  only the trees on the way to it are read. */
+    public static String lookup(String id, String path) {
+        return lookup(TREES_DIR, id, path);
+    }
+
+    static String lookup(File dir, String id, String path) {
+        String tree = id;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', start)) {
+            Entry subdir = read(dir, tree).get(path.substring(start, slash));
+            if (subdir == null || !subdir.isTree()) {
+                return null;
+            }
+            tree = subdir.id();
+            start = slash + 1;
+        }
+        Entry file = read(dir, tree).get(path.substring(start));
+        return file == null || file.isTree() ? null : file.id();
+    }
+
+    /** return every file under tree ID, path : blob id. */
+    public static TreeMap<String, String> files(String id) {
+        return files(TREES_DIR, id);
+    }
+
+    static TreeMap<String, String> files(File dir, String id) {
+        TreeMap<String, String> result = new TreeMap<>();
+        addFiles(dir, id, "", result);
+        return result;
+    }
+
+    private static void addFiles(File dir, String id, String prefix, Map<String, String> result) {
+        for (Map.Entry<String, Entry> entry : read(dir, id).entrySet()) {
+            if (entry.getValue().isTree()) {
+                addFiles(dir, entry.getValue().id(), prefix + entry.getKey() + "/", result);
+            } else {
+                result.put(prefix + entry.getKey(), entry.getValue().id());
+            }
+        }
+    }
+
+    /** return the files that differ between trees FROM and TO, path : blob id in TO, or null if TO lacks it.
+     *  subtrees with the same id in both are skipped without being read. */
+    public static TreeMap<String, String> diff(String from, String to) {
+        return diff(TREES_DIR, from, to);
+    }
+
+    static TreeMap<String, String> diff(File dir, String from, String to) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(dir, from, to, "", result);
+        return result;
+    }
+
+    private static void diff(File dir, String from, String to, String prefix, Map<String, String> result) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        TreeMap<String, Entry> fromEntries = from == null ? new TreeMap<>() : read(dir, from);
+        TreeMap<String, Entry> toEntries = to == null ? new TreeMap<>() : read(dir, to);
+        TreeSet<String> names = new TreeSet<>(fromEntries.keySet());
+        names.addAll(toEntries.keySet());
+        for (String name : names) {
+            Entry a = fromEntries.get(name);
+            Entry b = toEntries.get(name);
+            String fromBlob = a != null && !a.isTree() ? a.id() : null;
+            String toBlob = b != null && !b.isTree() ? b.id() : null;
+            if (!Objects.equals(fromBlob, toBlob)) {
+                result.put(prefix + name, toBlob);
+            }
+            String fromTree = a != null && a.isTree() ? a.id() : null;
+            String toTree = b != null && b.isTree() ? b.id() : null;
+            diff(dir, fromTree, toTree, prefix + name + "/", result);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -37,7 +38,7 @@ class Utils {
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            MessageDigest md = Trace.digest(MessageDigest.getInstance("SHA-1"));
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
@@ -97,8 +98,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Trace.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.end(Trace.READ_CONTENTS, start, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp);
         }
@@ -116,6 +120,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
+        long written = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -124,13 +130,13 @@ class Utils {
             BufferedOutputStream str =
                     new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                written += bytes.length;
             }
             str.close();
+            Trace.end(Trace.WRITE_CONTENTS, start, written);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp);
         }
@@ -140,11 +146,31 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
             ObjectInputStream in =
                     new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.end(Trace.READ_OBJECT, start, file.length());
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Return an object of type T deserialized from CONTENT, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] content,
+                                                  Class<T> expectedClass) {
+        long start = Trace.start();
+        try {
+            ObjectInputStream in =
+                    new ObjectInputStream(new ByteArrayInputStream(content));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            Trace.end(Trace.DESERIALIZE, start, content.length);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -154,7 +180,10 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Trace.start();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        Trace.end(Trace.WRITE_OBJECT, start, bytes.length);
     }
 
     /* DIRECTORIES */
@@ -172,7 +201,9 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        long start = Trace.start();
         String[] files = dir.list(PLAIN_FILES);
+        Trace.end(Trace.PLAIN_FILENAMES_IN, start, 0);
         if (files == null) {
             return null;
         } else {
@@ -209,11 +240,13 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
+        long start = Trace.start();
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
             objectStream.close();
+            Trace.end(Trace.SERIALIZE, start, stream.size());
             return stream.toByteArray();
         } catch (IOException excp) {
             throw error("Internal error serializing commit.");